@@ -0,0 +1,203 @@
+package nextflow.tencentcloud.nio;
+
+import static java.util.Objects.requireNonNull;
+
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.model.AppendObjectRequest;
+import com.qcloud.cos.model.AppendObjectResult;
+import com.qcloud.cos.model.COSObjectId;
+import com.qcloud.cos.model.ObjectMetadata;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import nextflow.tencentcloud.nio.util.CosAttributesCache;
+import nextflow.tencentcloud.nio.util.CosMultipartOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosAppendOutputStream
+ * output stream appending to an appendable object with the append object api, the
+ * content is buffered and each flush sends a single append request at the tracked position
+ */
+public final class CosAppendOutputStream extends OutputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(CosAppendOutputStream.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;  // 1 MiB
+
+    /**
+     * object type of the objects created by the append object api
+     */
+    public static final String APPENDABLE = "appendable";
+
+    private final COSClient cosClient;
+    private final COSObjectId objectId;
+    private final CosMultipartOptions opts;
+    private final byte[] buffer;
+    private String contentType;
+    private int count;
+    // the object length, that is the position of the next append
+    private long position;
+    // whether the object exists, an empty stream still creates it
+    private boolean created;
+    private boolean closed;
+    private CosAttributesCache attributesCache;
+
+    /**
+     * @param cosClient cos client
+     * @param objectId target object
+     * @param position the current object length, zero when it does not exist
+     * @param opts upload options
+     */
+    public CosAppendOutputStream(COSClient cosClient, COSObjectId objectId, long position, CosMultipartOptions opts) {
+        this.cosClient = requireNonNull(cosClient);
+        this.objectId = requireNonNull(objectId);
+        this.position = position;
+        this.created = position > 0;
+        this.opts = opts;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    public CosAppendOutputStream setContentType(String type) {
+        this.contentType = type;
+        return this;
+    }
+
+    public CosAppendOutputStream setAttributesCache(CosAttributesCache cache) {
+        this.attributesCache = cache;
+        return this;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            append();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            if (count == buffer.length) {
+                append();
+            }
+            final int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        append();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            append();
+        } finally {
+            closed = true;
+        }
+    }
+
+    /**
+     * send the buffered content with one append request
+     */
+    private void append() throws IOException {
+        if (count == 0 && created) {
+            return;
+        }
+        final byte[] content = Arrays.copyOf(buffer, count);
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            try {
+                position = appendObject(content);
+                appended();
+                return;
+            } catch (CosClientException e) {
+                // the request may have been applied even though the response was lost
+                if (isApplied(content.length)) {
+                    position += content.length;
+                    appended();
+                    return;
+                }
+                if (attempt >= opts.getMaxAttempts()) {
+                    throw new IOException(String.format("Failed to append %d bytes at position %d of %s",
+                            content.length, position, objectId), e);
+                }
+                final long delay = opts.retryDelay(attempt);
+                log.debug("Failed to append at position {} attempt {} of {} -- retrying in {} ms -- Caused by: {}",
+                        position, attempt, objectId, delay, e.getMessage());
+                sleep(delay);
+            }
+        }
+    }
+
+    private void appended() {
+        created = true;
+        count = 0;
+        if (attributesCache != null) {
+            attributesCache.putObject(objectId.getBucket(), objectId.getKey(), position, null);
+        }
+    }
+
+    private long appendObject(byte[] content) {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        if (contentType != null && position == 0) {
+            metadata.setContentType(contentType);
+        }
+        final AppendObjectRequest request = new AppendObjectRequest(objectId.getBucket(), objectId.getKey(),
+                new ByteArrayInputStream(content), metadata);
+        request.setPosition(position);
+        final AppendObjectResult result = cosClient.appendObject(request);
+        log.trace("Appended {} bytes at position {} of {}", content.length, position, objectId);
+        final Long next = result.getNextAppendPosition();
+        return next != null ? next : position + content.length;
+    }
+
+    /**
+     * check the object length to tell whether a failed append was applied by the server
+     */
+    private boolean isApplied(long len) {
+        try {
+            final long length = cosClient.getObjectMetadata(objectId.getBucket(), objectId.getKey()).getContentLength();
+            return len > 0 && length == position + len;
+        } catch (CosClientException e) {
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Append interrupted");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Can't write into a closed stream");
+        }
+    }
+}
@@ -3,38 +3,51 @@ package nextflow.tencentcloud.nio;
 import com.qcloud.cos.COSClient;
 import com.qcloud.cos.exception.CosClientException;
 import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.exception.MultiObjectDeleteException;
 import com.qcloud.cos.model.AccessControlList;
 import com.qcloud.cos.model.Bucket;
 import com.qcloud.cos.model.COSObject;
+import com.qcloud.cos.model.COSObjectInputStream;
+import com.qcloud.cos.model.COSObjectSummary;
 import com.qcloud.cos.model.CopyObjectRequest;
-import com.qcloud.cos.model.CopyResult;
+import com.qcloud.cos.model.DeleteObjectsRequest;
 import com.qcloud.cos.model.GetObjectRequest;
 import com.qcloud.cos.model.GetObjectTaggingRequest;
 import com.qcloud.cos.model.ListObjectsRequest;
 import com.qcloud.cos.model.ObjectListing;
 import com.qcloud.cos.model.ObjectMetadata;
+import com.qcloud.cos.model.ObjectTagging;
 import com.qcloud.cos.model.PutObjectRequest;
 import com.qcloud.cos.model.PutObjectResult;
+import com.qcloud.cos.model.SetObjectTaggingRequest;
 import com.qcloud.cos.model.Tag.Tag;
-import com.qcloud.cos.transfer.Copy;
-import com.qcloud.cos.transfer.TransferManager;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.EnumSet;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import nextflow.extension.FilesEx;
+import nextflow.tencentcloud.nio.util.CosAttributesCache;
+import nextflow.tencentcloud.nio.util.CosBlockCache;
+import nextflow.tencentcloud.nio.util.CosDownloadOptions;
+import nextflow.tencentcloud.nio.util.CosExecutors;
 import nextflow.tencentcloud.nio.util.CosMultipartOptions;
 import nextflow.tencentcloud.omics.config.CosConfig;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,23 +55,44 @@ public class CosClient {
 
     private static final Logger log = LoggerFactory.getLogger(CosClient.class);
 
+    /**
+     * max number of keys of a multi object delete request
+     */
+    public static final int MAX_DELETE_KEYS = 1000;
+
     private CosConfig config;
 
     private COSClient client;
 
-    private Long uploadChunkSize = Long.valueOf(CosMultipartOptions.DEFAULT_CHUNK_SIZE);
+    private CosBlockCache blockCache;
 
-    private Integer uploadMaxThreads = 10;
+    private CosAttributesCache attributesCache;
 
     public CosClient(CosConfig config) {
         this.client = new COSClient(config.getCredentials(), config.getClientConfig());
         this.config = config;
+        this.blockCache = CosBlockCache.forOptions(config.getDownloadOptions());
+        this.attributesCache = CosAttributesCache.forOptions(config.getDownloadOptions());
     }
 
     public CosConfig getConfig() {
         return config;
     }
 
+    /**
+     * @return the local block cache used by the read paths, or null when it is not enabled
+     */
+    public CosBlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * @return the cache of the path attributes looked up through this client
+     */
+    public CosAttributesCache getAttributesCache() {
+        return attributesCache;
+    }
+
     public List<Bucket> listBuckets() {
         return client.listBuckets();
     }
@@ -71,9 +105,48 @@ public class CosClient {
         return client.getObject(bucketName, key);
     }
 
+    /**
+     * getObjectRange
+     * open a stream over the bytes [start, end] of the object, both inclusive
+     *
+     * @param bucketName bucket name
+     * @param key object key
+     * @param start first byte offset
+     * @param end last byte offset
+     * @return the object content stream
+     */
+    public COSObjectInputStream getObjectRange(String bucketName, String key, long start, long end) {
+        GetObjectRequest request = new GetObjectRequest(bucketName, key);
+        request.setRange(start, end);
+        return client.getObject(request).getObjectContent();
+    }
+
+    /**
+     * readRange
+     * read the bytes [start, start + len) of the object into the given buffer
+     *
+     * @param bucketName bucket name
+     * @param key object key
+     * @param start first byte offset
+     * @param buffer target buffer
+     * @param off buffer offset
+     * @param len number of bytes to read
+     * @throws IOException if the range cannot be read entirely
+     */
+    public void readRange(String bucketName, String key, long start, byte[] buffer, int off, int len)
+            throws IOException {
+        try (COSObjectInputStream stream = getObjectRange(bucketName, key, start, start + len - 1)) {
+            IOUtils.readFully(stream, buffer, off, len);
+        }
+    }
+
     public PutObjectResult putObject(String bucket, String key, File file) {
         PutObjectRequest req = new PutObjectRequest(bucket, key, file);
-        return client.putObject(req);
+        try {
+            return client.putObject(req);
+        } finally {
+            attributesCache.invalidate(bucket, key);
+        }
     }
 
     public PutObjectResult putObject(
@@ -87,11 +160,142 @@ public class CosClient {
         if (log.isTraceEnabled()) {
             log.trace("Cos PutObject request {}", req);
         }
-        return client.putObject(req);
+        try {
+            return client.putObject(req);
+        } finally {
+            attributesCache.invalidate(bucket, keyName);
+        }
     }
 
     public void deleteObject(String bucket, String key) {
-        client.deleteObject(bucket, key);
+        try {
+            client.deleteObject(bucket, key);
+        } finally {
+            attributesCache.invalidate(bucket, key);
+        }
+    }
+
+    /**
+     * deleteObjects
+     * delete the given keys with multi object delete requests of up to 1000 keys,
+     * the requests are sent concurrently. a single request is sent by the calling thread
+     *
+     * @param bucket bucket name
+     * @param keys the keys to delete
+     * @throws IOException if any key cannot be deleted
+     */
+    public void deleteObjects(String bucket, List<String> keys) throws IOException {
+        if (keys.size() <= MAX_DELETE_KEYS) {
+            try {
+                deleteBatch(bucket, keys);
+            } finally {
+                for (String it : keys) {
+                    attributesCache.invalidate(bucket, it);
+                }
+            }
+            return;
+        }
+        final ExecutorService executor = CosExecutors.getOrCreate("CosDeleter", config.getDeleteWorkers());
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += MAX_DELETE_KEYS) {
+            final List<String> batch = keys.subList(i, Math.min(i + MAX_DELETE_KEYS, keys.size()));
+            futures.add(submitDelete(executor, bucket, batch));
+        }
+        try {
+            awaitDeletes(futures, bucket, keys.size());
+        } finally {
+            for (String it : keys) {
+                attributesCache.invalidate(bucket, it);
+            }
+        }
+    }
+
+    /**
+     * deleteDirectory
+     * delete all the objects under the given directory, each page of the listing is
+     * deleted with one multi object delete request while the next page is listed
+     *
+     * @param path cos directory
+     * @return the number of deleted objects
+     * @throws IOException if any object cannot be deleted
+     */
+    public long deleteDirectory(CosPath path) throws IOException {
+        final String prefix = path.getKey().isEmpty() || path.getKey().endsWith("/")
+                ? path.getKey() : path.getKey() + "/";
+        final ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(path.getBucket());
+        request.setPrefix(prefix);
+        request.setMaxKeys(MAX_DELETE_KEYS);
+
+        final long begin = System.currentTimeMillis();
+        final ExecutorService executor = CosExecutors.getOrCreate("CosDeleter", config.getDeleteWorkers());
+        final List<Future<?>> futures = new ArrayList<>();
+        long count = 0;
+        try {
+            ObjectListing listing = client.listObjects(request);
+            while (true) {
+                final List<String> keys = new ArrayList<>(listing.getObjectSummaries().size());
+                for (COSObjectSummary it : listing.getObjectSummaries()) {
+                    keys.add(it.getKey());
+                }
+                if (!keys.isEmpty()) {
+                    futures.add(submitDelete(executor, path.getBucket(), keys));
+                    count += keys.size();
+                }
+                if (!listing.isTruncated()) {
+                    break;
+                }
+                listing = client.listNextBatchOfObjects(listing);
+            }
+        } catch (CosClientException e) {
+            for (Future<?> it : futures) {
+                it.cancel(true);
+            }
+            throw new IOException(String.format("Failed to list cos://%s/%s", path.getBucket(), prefix), e);
+        }
+        try {
+            awaitDeletes(futures, path.getBucket(), count);
+        } finally {
+            attributesCache.invalidateTree(path.getBucket(), path.getKey());
+        }
+        log.debug("Cos delete directory cos://{}/{} - objects: {}; requests: {}; time: {} ms",
+                path.getBucket(), prefix, count, futures.size(), System.currentTimeMillis() - begin);
+        return count;
+    }
+
+    private Future<?> submitDelete(ExecutorService executor, String bucket, List<String> keys) {
+        return executor.submit(() -> {
+            deleteBatch(bucket, keys);
+            return null;
+        });
+    }
+
+    private static void awaitDeletes(List<Future<?>> futures, String bucket, long count) throws IOException {
+        final CosExecutors.Failures failures = CosExecutors.awaitEach(futures, "delete", "cos://" + bucket);
+        if (failures.getError() != null) {
+            throw new IOException(String.format("Failed %d of %d delete requests for %d objects from cos://%s",
+                    failures.getCount(), futures.size(), count, bucket), failures.getError());
+        }
+    }
+
+    private void deleteBatch(String bucket, List<String> keys) throws IOException {
+        final List<DeleteObjectsRequest.KeyVersion> versions = new ArrayList<>(keys.size());
+        for (String it : keys) {
+            versions.add(new DeleteObjectsRequest.KeyVersion(it));
+        }
+        final DeleteObjectsRequest request = new DeleteObjectsRequest(bucket);
+        request.setKeys(versions);
+        request.setQuiet(true);
+        try {
+            client.deleteObjects(request);
+            log.trace("Deleted {} objects from cos://{}", keys.size(), bucket);
+        } catch (MultiObjectDeleteException e) {
+            final MultiObjectDeleteException.DeleteError first = e.getErrors().get(0);
+            throw new IOException(String.format("Failed to delete %d of %d objects from cos://%s - first: %s (%s)",
+                    e.getErrors().size(), keys.size(), bucket, first.getKey(), first.getMessage()), e);
+        } catch (CosClientException e) {
+            throw new IOException(String.format("Failed to delete %d objects from cos://%s", keys.size(), bucket), e);
+        }
     }
 
     public void copyObject(CopyObjectRequest req, List<Tag> tags, String contentType, String storageClass) {
@@ -108,7 +312,11 @@ public class CosClient {
             log.trace("Cos CopyObject request {}", req);
         }
 
-        client.copyObject(req);
+        try {
+            client.copyObject(req);
+        } finally {
+            attributesCache.invalidate(req.getDestinationBucketName(), req.getDestinationKey());
+        }
     }
 
     public COSClient getClient() {
@@ -133,52 +341,65 @@ public class CosClient {
 
     /**
      * multipartCopyObject
-     * copy file from cos to cos,in multipart mode
+     * copy file from cos to cos, in multipart mode. the parts are copied on the pool
+     * shared by all the copies to the target region
      *
      * @param cosSource source cos path
      * @param cosTarget target cos path
      * @param objectSize file object size
+     * @param sourceMetadata source object metadata, carried over to the target
      * @param opts copy options
      * @param tags file copy tags
-     * @param contentType file content type
+     * @param contentType file content type, or null to keep the source one
      * @param storageClass file storage class
      */
     public void multipartCopyObject(
-            CosPath cosSource, CosPath cosTarget, Long objectSize, CosMultipartOptions opts,
-            List<Tag> tags, String contentType, String storageClass) {
+            CosPath cosSource, CosPath cosTarget, Long objectSize, ObjectMetadata sourceMetadata,
+            CosMultipartOptions opts, List<Tag> tags, String contentType, String storageClass) throws IOException {
 
         CosClient srcClient = cosSource.getFileSystem().getClient();
         CosClient dstClient = cosTarget.getFileSystem().getClient();
-        ExecutorService threadPool = Executors.newFixedThreadPool(32);
-        TransferManager transferManager = new TransferManager(dstClient.getClient(), threadPool);
-        CopyObjectRequest copyObjectRequest = new CopyObjectRequest(srcClient.getConfig().getRegion(),
-                cosSource.getBucket(),
-                cosSource.getKey(), cosTarget.getBucket(), cosTarget.getKey());
+        final CosMultipartCopier copier = new CosMultipartCopier(dstClient.getClient(),
+                dstClient.getConfig().getRegion(), opts);
         try {
-            Copy copy = transferManager.copy(copyObjectRequest, srcClient.getClient(), null);
-            // Returns an asynchronous copy result, you can synchronously
-            // call waitForCopyResult to wait for the copy to finish.
-            // If successful, it returns CopyResult, if it fails, it throws an exception.
-            CopyResult copyResult = copy.waitForCopyResult();
-        } catch (CosServiceException e) {
-            e.printStackTrace();
-            throw e;
-        } catch (CosClientException e) {
-            e.printStackTrace();
-            throw e;
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
+            copier.copy(cosSource, srcClient.getConfig().getRegion(), cosTarget, objectSize, sourceMetadata,
+                    contentType, storageClass, tags);
+        } finally {
+            dstClient.attributesCache.invalidate(cosTarget.getBucket(), cosTarget.getKey());
         }
+    }
 
-        transferManager.shutdownNow();
-
+    public void downloadFile(CosPath source, File target) throws IOException {
+        final ObjectMetadata metadata = client.getObjectMetadata(source.getBucket(), source.getKey());
+        downloadFile(source, target, metadata.getContentLength(), metadata.getETag());
     }
 
-    public void downloadFile(CosPath source, File target) {
+    /**
+     * downloadFile
+     * download a cos object to a local file, objects larger than the parallel threshold
+     * are split into ranges downloaded concurrently
+     *
+     * @param source cos source path
+     * @param target download target file
+     * @param size source object size
+     * @param etag source object etag, tells whether a previous checkpoint is still valid,
+     *             fetched with a HEAD request when null and the download is resumable
+     * @throws IOException io exception
+     */
+    public void downloadFile(CosPath source, File target, long size, String etag) throws IOException {
+        final CosDownloadOptions opts = config.getDownloadOptions();
         try {
-            GetObjectRequest getObjectRequest = new GetObjectRequest(source.getBucket(), source.getKey());
-            ObjectMetadata objectMetadata = client.getObject(getObjectRequest, target);
+            if (size >= opts.getParallelThreshold() && size > opts.getPartSize() && opts.isCheckpoint()) {
+                final String version = etag != null
+                        ? etag : client.getObjectMetadata(source.getBucket(), source.getKey()).getETag();
+                new CosRangeDownloader(this, opts)
+                        .downloadResumable(source.getBucket(), source.getKey(), size, version, target);
+            } else if (size >= opts.getParallelThreshold() && size > opts.getPartSize()) {
+                new CosRangeDownloader(this, opts).download(source.getBucket(), source.getKey(), size, target);
+            } else {
+                GetObjectRequest getObjectRequest = new GetObjectRequest(source.getBucket(), source.getKey());
+                client.getObject(getObjectRequest, target);
+            }
         } catch (Exception e) {
             log.debug("Cos download file: cos://{}/{} interrupted", source.getBucket(), source.getKey());
             throw e;
@@ -187,7 +408,9 @@ public class CosClient {
 
     /**
      * downloadDirectory
-     * download cos path to file io
+     * download cos path to file io, the source tree is walked with a single listing of its
+     * prefix, the local directories are created as they are entered and each file is submitted
+     * for download as soon as it is listed
      *
      * @param source cos source path
      * @param targetFile download target file
@@ -195,72 +418,362 @@ public class CosClient {
      */
     public void downloadDirectory(CosPath source, File targetFile) throws IOException {
         final Path target = targetFile.toPath();
+        final String prefix = source.getKey().isEmpty() ? "" : source.getKey() + "/";
+        final ExecutorService executor = CosExecutors.getOrCreate("CosDirectoryDownloader",
+                config.getDownloadOptions().getDirectoryWorkers());
+        final List<Future<?>> futures = new ArrayList<>();
 
-        FileVisitor<Path> visitor = new SimpleFileVisitor<Path>() {
+        Files.createDirectory(target);
+        final CosFileSystemProvider provider = (CosFileSystemProvider) source.getFileSystem().provider();
+        try {
+            provider.walkFileTree(source, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    final Path local = localPath(target, prefix, (CosPath) dir);
+                    if (local == null) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    Files.createDirectories(local);
+                    return FileVisitResult.CONTINUE;
+                }
 
-            public FileVisitResult preVisitDirectory(Path current, BasicFileAttributes attr)
-                    throws IOException {
-                // get the *delta* path against the source path
-                Path rel = source.relativize(current);
-                String delta = rel != null ? rel.toString() : null;
-                Path newFolder = delta != null ? target.resolve(delta) : target;
-                if (log.isTraceEnabled()) {
-                    log.trace("Copy DIR: " + current + " -> " + newFolder);
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    final CosPath current = (CosPath) file;
+                    final Path local = localPath(target, prefix, current);
+                    if (local == null) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    final long size = attrs.size();
+                    // the summary of the listing carries the etag of the object
+                    final COSObjectSummary summary = current.fetchObjectSummary();
+                    final String etag = summary != null ? summary.getETag() : null;
+                    futures.add(executor.submit(() -> {
+                        if (log.isTraceEnabled()) {
+                            log.trace("Copy file: " + current + " -> " + FilesEx.toUriString(local));
+                        }
+                        downloadFile(current, local.toFile(), size, etag);
+                        return null;
+                    }));
+                    return FileVisitResult.CONTINUE;
                 }
-                // this `copy` creates the new folder, but does not copy the contained files
-                Files.createDirectory(newFolder);
-                return FileVisitResult.CONTINUE;
+            });
+        } catch (IOException | RuntimeException e) {
+            for (Future<?> it : futures) {
+                it.cancel(true);
             }
+            throw e;
+        }
 
-            @Override
-            public FileVisitResult visitFile(Path current, BasicFileAttributes attr) {
-                // get the *delta* path against the source path
-                Path rel = source.relativize(current);
-                String delta = rel != null ? rel.toString() : null;
-                Path newFile = delta != null ? target.resolve(delta) : target;
-                if (log.isTraceEnabled()) {
-                    log.trace("Copy file: " + current + " -> " + FilesEx.toUriString(newFile));
-                }
+        log.debug("Cos download directory cos://{}/{} - files: {}; workers: {}",
+                source.getBucket(), prefix, futures.size(), config.getDownloadOptions().getDirectoryWorkers());
+        CosExecutors.awaitAll(futures, "download", "cos://" + source.getBucket() + "/" + prefix);
+    }
+
+    /**
+     * the local path of a walked cos path, null when it resolves outside of the target directory
+     */
+    private static Path localPath(Path target, String prefix, CosPath path) {
+        final String key = path.getKey();
+        final Path local = target.resolve(key.length() > prefix.length() ? key.substring(prefix.length()) : "")
+                .normalize();
+        if (!local.startsWith(target)) {
+            log.warn("Skipping download of cos://{}/{} -- it resolves outside of {}", path.getBucket(), key, target);
+            return null;
+        }
+        return local;
+    }
+
+    /**
+     * copyDirectory
+     * server side copy of all the objects under the source directory, the source prefix is
+     * listed once and the objects are copied concurrently, the large ones with a multipart copy.
+     * this client must be the client of the target file system
+     *
+     * @param source cos source directory
+     * @param target cos target directory
+     * @return the keys of the copied source objects
+     * @throws IOException if any object cannot be copied
+     */
+    public List<String> copyDirectory(CosPath source, CosPath target) throws IOException {
+        final CosMultipartOptions opts = config.getUploadOptions();
+        final CosClient srcClient = source.getFileSystem().getClient();
+        final String prefix = source.getKey().isEmpty() || source.getKey().endsWith("/")
+                ? source.getKey() : source.getKey() + "/";
+        final List<COSObjectSummary> objects = srcClient.listAllObjects(source.getBucket(), prefix);
+        final String srcRegion = srcClient.getConfig().getRegion();
+
+        log.debug("Cos copy directory cos://{}/{} to cos://{}/{} - objects: {}; workers: {}",
+                source.getBucket(), prefix, target.getBucket(), target.getKey(), objects.size(),
+                opts.getDirectoryWorkers());
+        final long begin = System.currentTimeMillis();
+        final ExecutorService executor = CosExecutors.getOrCreate("CosDirectoryCopier", opts.getDirectoryWorkers());
+        final List<Future<?>> futures = new ArrayList<>(objects.size());
+        final List<String> keys = new ArrayList<>(objects.size());
+        for (COSObjectSummary it : objects) {
+            final String rel = it.getKey().substring(prefix.length());
+            final String targetKey = target.getKey().isEmpty() || target.getKey().endsWith("/")
+                    ? target.getKey() + rel : target.getKey() + "/" + rel;
+            keys.add(it.getKey());
+            futures.add(executor.submit(() -> {
+                copyDirectoryObject(srcRegion, source, it, target, targetKey, opts);
+                return null;
+            }));
+        }
 
-                downloadFile((CosPath) current, newFile.toFile());
+        final CosExecutors.Failures failures;
+        try {
+            failures = CosExecutors.awaitEach(futures, "copy", source.toUri().toString());
+        } finally {
+            attributesCache.invalidateTree(target.getBucket(), target.getKey());
+        }
 
-                return FileVisitResult.CONTINUE;
+        final int failed = failures.getCount();
+        final long elapsed = System.currentTimeMillis() - begin;
+        log.debug("Cos copy directory cos://{}/{} to cos://{}/{} - copied: {}; failed: {}; time: {} ms",
+                source.getBucket(), prefix, target.getBucket(), target.getKey(), objects.size() - failed, failed,
+                elapsed);
+        if (failures.getError() != null) {
+            throw new IOException(String.format("Failed to copy %d of %d objects from cos://%s/%s to cos://%s/%s",
+                    failed, objects.size(), source.getBucket(), prefix, target.getBucket(), target.getKey()),
+                    failures.getError());
+        }
+        return keys;
+    }
+
+    private void copyDirectoryObject(String srcRegion, CosPath source, COSObjectSummary object, CosPath target,
+            String targetKey, CosMultipartOptions opts) throws IOException {
+        final List<Tag> tags = target.getTagsList();
+        final String storageClass = target.getStorageClass();
+        if (object.getSize() <= opts.getMaxCopySize()) {
+            final CopyObjectRequest request = new CopyObjectRequest(srcRegion, object.getBucketName(),
+                    object.getKey(), target.getBucket(), targetKey);
+            try {
+                copyObject(request, tags, null, storageClass);
+            } catch (CosClientException e) {
+                throw new IOException(String.format("Failed to copy cos://%s/%s to cos://%s/%s",
+                        object.getBucketName(), object.getKey(), target.getBucket(), targetKey), e);
             }
+        } else {
+            final CosPath from = new CosPath(source.getFileSystem(), "/" + object.getBucketName() + "/"
+                    + object.getKey());
+            final CosPath to = new CosPath(target.getFileSystem(), "/" + target.getBucket() + "/" + targetKey);
+            final ObjectMetadata metadata;
+            try {
+                metadata = source.getFileSystem().getClient().getObjectMetadata(object.getBucketName(),
+                        object.getKey());
+            } catch (CosClientException e) {
+                throw new IOException(String.format("Failed to read the metadata of cos://%s/%s",
+                        object.getBucketName(), object.getKey()), e);
+            }
+            multipartCopyObject(from, to, object.getSize(), metadata, opts, tags, null, storageClass);
+        }
+        log.trace("Copied cos://{}/{} to cos://{}/{}", object.getBucketName(), object.getKey(),
+                target.getBucket(), targetKey);
+    }
 
-        };
+    /**
+     * list all the objects with the given prefix, without delimiter. the key space is
+     * listed by concurrent ranges when the list parallelism is greater than one
+     */
+    private List<COSObjectSummary> listAllObjects(String bucket, String prefix) {
+        final int parallelism = config.getDownloadOptions().getListParallelism();
+        if (parallelism > 1) {
+            return new CosParallelLister(this, bucket, prefix, null, parallelism).listAll();
+        }
+        final ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(bucket);
+        request.setPrefix(prefix);
+        request.setMaxKeys(1000);
+
+        final List<COSObjectSummary> result = new ArrayList<>();
+        ObjectListing listing = client.listObjects(request);
+        result.addAll(listing.getObjectSummaries());
+        while (listing.isTruncated()) {
+            listing = client.listNextBatchOfObjects(listing);
+            result.addAll(listing.getObjectSummaries());
+        }
+        return result;
+    }
 
-        Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
+    /**
+     * iterateObjects
+     * iterate the objects with the given prefix in key order, without delimiter, one listing
+     * page at a time or by concurrent key ranges when the list parallelism is greater than one
+     *
+     * @param bucket bucket name
+     * @param prefix listed prefix
+     * @return the object summaries iterator
+     */
+    public Iterator<COSObjectSummary> iterateObjects(String bucket, String prefix) {
+        final int parallelism = config.getDownloadOptions().getListParallelism();
+        if (parallelism > 1) {
+            final Iterator<CosParallelLister.Entry> entries =
+                    new CosParallelLister(this, bucket, prefix, null, parallelism).iterator(null);
+            return new Iterator<COSObjectSummary>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public COSObjectSummary next() {
+                    return entries.next().getSummary();
+                }
+            };
+        }
 
+        final ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(bucket);
+        request.setPrefix(prefix);
+        request.setMaxKeys(1000);
+        return new Iterator<COSObjectSummary>() {
+            private ObjectListing listing;
+            private Iterator<COSObjectSummary> page;
+
+            @Override
+            public boolean hasNext() {
+                if (listing == null) {
+                    listing = client.listObjects(request);
+                    page = listing.getObjectSummaries().iterator();
+                }
+                while (!page.hasNext() && listing.isTruncated()) {
+                    listing = client.listNextBatchOfObjects(listing);
+                    page = listing.getObjectSummaries().iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public COSObjectSummary next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
     }
 
-    public void uploadFile(File source, CosPath target) {
-        PutObjectRequest req = new PutObjectRequest(target.getBucket(), target.getKey(), source);
-        // initiate transfer
-        // await for completion
+    /**
+     * uploadFile
+     * upload a local file to cos, files larger than the multipart threshold
+     * are split into parts uploaded concurrently, either way the object gets the
+     * storage class, content type and tags of the target
+     *
+     * @param source local source file
+     * @param target cos target path
+     * @throws IOException io exception
+     */
+    public void uploadFile(File source, CosPath target) throws IOException {
+        final CosMultipartOptions opts = config.getUploadOptions();
+        final long size = source.length();
         try {
-            PutObjectResult upload = client.putObject(req);
-        } catch (Exception e) {
+            if (size > opts.getMultipartThreshold() || size > CosMultipartOptions.MAX_PUT_SIZE) {
+                new CosMultipartUploader(client, opts).upload(source, target);
+            } else {
+                // the same storage class and content type as the multipart upload initiated above
+                PutObjectRequest req = new PutObjectRequest(target.getBucket(), target.getKey(), source);
+                if (target.getStorageClass() != null) {
+                    req.setStorageClass(target.getStorageClass());
+                }
+                if (target.getContentType() != null) {
+                    final ObjectMetadata metadata = new ObjectMetadata();
+                    metadata.setContentType(target.getContentType());
+                    req.setMetadata(metadata);
+                }
+                client.putObject(req);
+            }
+            final List<Tag> tags = target.getTagsList();
+            if (!tags.isEmpty()) {
+                client.setObjectTagging(new SetObjectTaggingRequest(target.getBucket(), target.getKey(),
+                        new ObjectTagging(tags)));
+            }
+        } catch (CosClientException e) {
+            throw new IOException(String.format("Failed to upload %s to cos://%s/%s",
+                    source, target.getBucket(), target.getKey()), e);
+        } catch (IOException e) {
             log.debug("Cos upload file: cos://{}/{} interrupted", target.getBucket(), target.getKey());
-            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            attributesCache.invalidate(target.getBucket(), target.getKey());
         }
     }
 
     private final ThreadLocal<List<Tag>> uploadTags = new ThreadLocal<>();
 
-    public void uploadDirectory(File source, CosPath target) {
-        for (File file : source.listFiles()) {
-            CosPath t = (CosPath) target.resolve(file.getName());
-            if (file.isFile()) {
-                PutObjectRequest putObjectRequest = new PutObjectRequest(t.getBucket(), t.getKey(), file);
+    /**
+     * uploadDirectory
+     * upload the files of a local directory tree, the files are uploaded concurrently
+     * by a bounded pool of workers and each file is retried on failure
+     *
+     * @param source local source directory
+     * @param target cos target path
+     * @throws IOException if any file cannot be uploaded
+     */
+    public void uploadDirectory(File source, CosPath target) throws IOException {
+        final CosMultipartOptions opts = config.getUploadOptions();
+        final Path root = source.toPath();
+        final List<Path> files;
+        try (Stream<Path> walk = Files.walk(root, FileVisitOption.FOLLOW_LINKS)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        log.debug("Cos upload directory {} to cos://{}/{} - files: {}; workers: {}",
+                source, target.getBucket(), target.getKey(), files.size(), opts.getDirectoryWorkers());
+        final long begin = System.currentTimeMillis();
+        final ExecutorService executor = CosExecutors.getOrCreate("CosDirectoryUploader", opts.getDirectoryWorkers());
+        final List<Future<Long>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            final String rel = root.relativize(file).toString().replace(File.separatorChar, '/');
+            final CosPath current = (CosPath) target.resolve(rel);
+            futures.add(executor.submit(() -> uploadFileWithRetry(file.toFile(), current, opts)));
+        }
+
+        final AtomicLong bytes = new AtomicLong();
+        final CosExecutors.Failures failures;
+        try {
+            failures = CosExecutors.awaitEach(futures, bytes::addAndGet, "upload", source.toString());
+        } finally {
+            attributesCache.invalidateTree(target.getBucket(), target.getKey());
+        }
+
+        final int failed = failures.getCount();
+        final long elapsed = System.currentTimeMillis() - begin;
+        log.debug("Cos upload directory {} to cos://{}/{} - uploaded: {}; failed: {}; bytes: {}; time: {} ms",
+                source, target.getBucket(), target.getKey(), files.size() - failed, failed, bytes.get(), elapsed);
+        if (failures.getError() != null) {
+            throw new IOException(String.format("Failed to upload %d of %d files from %s to cos://%s/%s",
+                    failed, files.size(), source, target.getBucket(), target.getKey()), failures.getError());
+        }
+    }
+
+    /**
+     * upload a single file of a directory, retrying the whole file on failure
+     *
+     * @return the number of bytes uploaded
+     */
+    private long uploadFileWithRetry(File file, CosPath target, CosMultipartOptions opts) throws IOException {
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            try {
+                uploadFile(file, target);
+                log.trace("Uploaded {} to {}", file, target.toUri());
+                return file.length();
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= opts.getMaxAttempts()) {
+                    throw e;
+                }
+                log.debug("Failed to upload {} attempt {} to {} -- Caused by: {}",
+                        file, attempt, target.toUri(), e.getMessage());
                 try {
-                    client.putObject(putObjectRequest);
-                } catch (Exception e) {
-                    log.debug("Cos upload file: cos://{}/{} interrupted", t.getBucket(), t.getKey());
+                    Thread.sleep(opts.retryDelay(attempt));
+                } catch (InterruptedException ie) {
                     Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Upload interrupted for " + file);
                 }
-                System.out.println("Uploaded: " + file.getAbsolutePath() + " to " + t.toUri());
-            } else if (file.isDirectory()) {
-                uploadDirectory(file, t);
             }
         }
     }
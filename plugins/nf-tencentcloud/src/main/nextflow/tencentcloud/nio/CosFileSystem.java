@@ -13,6 +13,8 @@ import java.nio.file.WatchService;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Set;
+import java.util.regex.Pattern;
+import nextflow.tencentcloud.nio.util.CosGlobs;
 
 public class CosFileSystem extends FileSystem {
 
@@ -85,7 +87,22 @@ public class CosFileSystem extends FileSystem {
 
     @Override
     public PathMatcher getPathMatcher(String syntaxAndPattern) {
-        throw new UnsupportedOperationException();
+        final int p = syntaxAndPattern.indexOf(':');
+        if (p <= 0) {
+            throw new IllegalArgumentException("Path matcher must be 'syntax:pattern': " + syntaxAndPattern);
+        }
+        final String syntax = syntaxAndPattern.substring(0, p);
+        final String expr = syntaxAndPattern.substring(p + 1);
+        final String regex;
+        if (syntax.equalsIgnoreCase("glob")) {
+            regex = CosGlobs.toRegexPattern(expr);
+        } else if (syntax.equalsIgnoreCase("regex")) {
+            regex = expr;
+        } else {
+            throw new UnsupportedOperationException("Path matcher syntax not supported: " + syntax);
+        }
+        final Pattern pattern = Pattern.compile(regex);
+        return path -> pattern.matcher(path.toString()).matches();
     }
 
     @Override
@@ -9,10 +9,13 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.qcloud.cos.exception.CosServiceException;
 import com.qcloud.cos.model.AccessControlList;
+import com.qcloud.cos.model.COSObject;
 import com.qcloud.cos.model.COSObjectId;
+import com.qcloud.cos.model.COSObjectInputStream;
 import com.qcloud.cos.model.COSObjectSummary;
 import com.qcloud.cos.model.CopyObjectRequest;
 import com.qcloud.cos.model.Grant;
+import com.qcloud.cos.model.ListObjectsRequest;
 import com.qcloud.cos.model.ObjectMetadata;
 import com.qcloud.cos.model.Owner;
 import com.qcloud.cos.model.Permission;
@@ -28,6 +31,7 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.AccessMode;
 import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
@@ -36,6 +40,7 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystemAlreadyExistsException;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
+import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
@@ -49,13 +54,17 @@ import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
@@ -64,6 +73,7 @@ import nextflow.extension.FilesEx;
 import nextflow.file.CopyOptions;
 import nextflow.file.FileHelper;
 import nextflow.file.FileSystemTransferAware;
+import nextflow.tencentcloud.nio.util.CosDownloadOptions;
 import nextflow.tencentcloud.nio.util.CosMultipartOptions;
 import nextflow.tencentcloud.nio.util.CosObjectSummaryLookup;
 import nextflow.tencentcloud.omics.config.CosConfig;
@@ -161,14 +171,49 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         final CosPath cosPath = (CosPath) dir;
 
         return new DirectoryStream<Path>() {
+            private CosIterator iterator;
+
             @Override
             public void close() throws IOException {
-                // nothing to do here
+                // stop the prefetch of the next listing page
+                if (iterator != null) {
+                    iterator.close();
+                }
             }
 
             @Override
             public Iterator<Path> iterator() {
-                return new CosIterator(cosPath.getFileSystem(), cosPath.getBucket(), cosPath.getKey() + "/");
+                iterator = new CosIterator(cosPath.getFileSystem(), cosPath.getBucket(), cosPath.getKey() + "/");
+                return filter == null ? iterator : filtered(iterator, filter);
+            }
+        };
+    }
+
+    private static Iterator<Path> filtered(Iterator<Path> it, DirectoryStream.Filter<? super Path> filter) {
+        return new Iterator<Path>() {
+            private Path next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && it.hasNext()) {
+                    final Path path = it.next();
+                    try {
+                        next = filter.accept(path) ? path : null;
+                    } catch (IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Path result = next;
+                next = null;
+                return result;
             }
         };
     }
@@ -187,18 +232,33 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         Preconditions.checkArgument(!cosPath.getKey().equals(""),
                 "cannot create InputStream for root directory: %s", FilesEx.toUriString(cosPath));
 
+        final CosClient client = cosPath.getFileSystem().getClient();
         InputStream result;
         try {
-            result = cosPath
-                    .getFileSystem()
-                    .getClient()
-                    .getObject(cosPath.getBucket(), cosPath.getKey())
-                    .getObjectContent();
+            final COSObject object = client.getObject(cosPath.getBucket(), cosPath.getKey());
+            result = object.getObjectContent();
 
             if (result == null) {
                 throw new IOException(String.format("The specified path is a directory: %s",
                         FilesEx.toUriString(cosPath)));
             }
+
+            // large objects are read with concurrent range requests,
+            // the stream already opened serves the first part
+            final CosDownloadOptions opts = client.getConfig().getDownloadOptions();
+            final long length = object.getObjectMetadata().getContentLength();
+            if (length >= opts.getParallelThreshold() && length > opts.getPartSize()) {
+                if (client.getBlockCache() != null) {
+                    // the parts are read through the block cache, keyed by the etag of the object,
+                    // the small objects are served by the single request as when the cache is off
+                    closeContent(result);
+                    result = new CosParallelInputStream(client, cosPath.getBucket(), cosPath.getKey(),
+                            length, null, opts, client.getBlockCache(), object.getObjectMetadata().getETag());
+                } else {
+                    result = new CosParallelInputStream(client, cosPath.getBucket(), cosPath.getKey(),
+                            length, result, opts);
+                }
+            }
         } catch (CosServiceException e) {
             if (e.getStatusCode() == 404) {
                 throw new NoSuchFileException(path.toString());
@@ -210,6 +270,20 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         return result;
     }
 
+    /**
+     * drop the connection of a content stream instead of draining the rest of the object
+     */
+    private static void closeContent(InputStream content) {
+        try {
+            if (content instanceof COSObjectInputStream) {
+                ((COSObjectInputStream) content).abort();
+            }
+            content.close();
+        } catch (IOException e) {
+            log.trace("Error while closing object content -- Cause: {}", e.getMessage());
+        }
+    }
+
     @Override
     public OutputStream newOutputStream(final Path path, final OpenOption... options) throws IOException {
         Preconditions.checkArgument(path instanceof CosPath,
@@ -220,8 +294,12 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         if (options.length > 0) {
             Set<OpenOption> opts = new LinkedHashSet<>(Arrays.asList(options));
 
-            // cannot handle APPEND here -> use newByteChannel() implementation
             if (opts.contains(StandardOpenOption.APPEND)) {
+                final OutputStream result = newAppendOutputStream(cosPath, opts);
+                if (result != null) {
+                    return result;
+                }
+                // not an appendable object -> use newByteChannel() implementation
                 return super.newOutputStream(path, options);
             }
 
@@ -279,13 +357,22 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
             throw new FileAlreadyExistsException(localDestination.toString());
         }
 
-        final Optional<CosFileAttributes> attrs = readAttr1(source);
-        final boolean isDir = attrs.isPresent() && attrs.get().isDirectory();
+        // the summary is kept since its etag validates the checkpoint of a resumable download
+        COSObjectSummary summary = null;
+        try {
+            summary = cosObjectSummaryLookup.lookup(source);
+        } catch (NoSuchFileException e) {
+            // reported by the download below
+        }
+        final CosFileAttributes attrs = summary != null ? toAttributes(source, summary) : null;
+        final boolean isDir = attrs != null && attrs.isDirectory();
         final String type = isDir ? "directory" : "file";
         final CosClient cosClient = source.getFileSystem().getClient();
         log.debug("Cos download {} from={} to={}", type, FilesEx.toUriString(source), localDestination);
         if (isDir) {
             cosClient.downloadDirectory(source, localDestination.toFile());
+        } else if (attrs != null) {
+            cosClient.downloadFile(source, localDestination.toFile(), attrs.size(), summary.getETag());
         } else {
             cosClient.downloadFile(source, localDestination.toFile());
         }
@@ -308,9 +395,12 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         final Optional<CosFileAttributes> attrs = readAttr1(target);
         final boolean exits = attrs.isPresent();
 
-        // delete target if it exists and REPLACE_EXISTING is specified
-        if (opts.replaceExisting()) {
-            FileHelper.deletePath(target);
+        // delete target if it exists and REPLACE_EXISTING is specified, a directory with
+        // concurrent multi object delete requests of up to 1000 keys
+        if (opts.replaceExisting() && exits && attrs.get().isDirectory()) {
+            target.getFileSystem().getClient().deleteDirectory(target);
+        } else if (opts.replaceExisting() && exits) {
+            delete(target);
         } else if (exits) {
             throw new FileAlreadyExistsException(target.toString());
         }
@@ -326,16 +416,53 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         }
     }
 
+    /**
+     * create a stream appending to the object with the append object api
+     *
+     * @return the stream, or null when the object exists and it is not appendable
+     */
+    private OutputStream newAppendOutputStream(CosPath cosPath, Set<OpenOption> opts) throws IOException {
+        if (opts.contains(StandardOpenOption.READ) || opts.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+            throw new IllegalArgumentException("READ or TRUNCATE_EXISTING not allowed with APPEND");
+        }
+        final CosClient client = cosPath.getFileSystem().getClient();
+        long position = 0;
+        try {
+            final ObjectMetadata metadata = client.getObjectMetadata(cosPath.getBucket(), cosPath.getKey());
+            if (opts.contains(StandardOpenOption.CREATE_NEW)) {
+                throw new FileAlreadyExistsException(FilesEx.toUriString(cosPath));
+            }
+            final Object type = metadata.getRawMetadataValue("x-cos-object-type");
+            if (!CosAppendOutputStream.APPENDABLE.equals(type)) {
+                log.debug("Cos object {} is not appendable -- type: {}", FilesEx.toUriString(cosPath), type);
+                return null;
+            }
+            position = metadata.getContentLength();
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() != 404) {
+                throw new IOException(String.format("Cannot access file: %s", FilesEx.toUriString(cosPath)), e);
+            }
+            if (!opts.contains(StandardOpenOption.CREATE) && !opts.contains(StandardOpenOption.CREATE_NEW)) {
+                throw new NoSuchFileException(FilesEx.toUriString(cosPath));
+            }
+        }
+        return new CosAppendOutputStream(client.getClient(), cosPath.toCosObjectId(), position,
+                client.getConfig().getUploadOptions())
+                .setContentType(cosPath.getContentType())
+                .setAttributesCache(client.getAttributesCache());
+    }
+
     private CosOutputStream createUploaderOutputStream(CosPath fileToUpload) {
         CosClient cosClient = fileToUpload.getFileSystem().getClient();
 
         final String storageClass = fileToUpload.getStorageClass() != null
                 ? fileToUpload.getStorageClass() : StorageClass.Standard.toString();
-        final CosMultipartOptions opts = new CosMultipartOptions();
+        final CosMultipartOptions opts = cosClient.getConfig().getUploadOptions();
         final COSObjectId objectId = fileToUpload.toCosObjectId();
         CosOutputStream stream = new CosOutputStream(cosClient.getClient(), objectId, opts)
                 .setStorageClass(storageClass)
-                .setContentType(fileToUpload.getContentType());
+                .setContentType(fileToUpload.getContentType())
+                .setAttributesCache(cosClient.getAttributesCache());
         return stream;
     }
 
@@ -346,6 +473,15 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         Preconditions.checkArgument(path instanceof CosPath,
                 "path must be an instance of %s", CosPath.class.getName());
         final CosPath cosPath = (CosPath) path;
+
+        if (isReadOnly(options)) {
+            return newReadChannel(cosPath);
+        }
+
+        if (isStreamingWrite(cosPath, options)) {
+            return new CosWriteChannel(cosPath, createUploaderOutputStream(cosPath));
+        }
+
         // we resolve to a file inside the temp folder with the cospath name
         final Path tempFile = createTempDir().resolve(path.getFileName().toString());
 
@@ -442,6 +578,70 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         };
     }
 
+    /**
+     * whether the channel can stream the content straight into an upload, that is when
+     * it is write only and any existing content is replaced
+     */
+    private boolean isStreamingWrite(CosPath cosPath, Set<? extends OpenOption> options) throws IOException {
+        if (!options.contains(StandardOpenOption.WRITE)
+                || options.contains(StandardOpenOption.READ)
+                || options.contains(StandardOpenOption.APPEND)) {
+            return false;
+        }
+        final boolean createNew = options.contains(StandardOpenOption.CREATE_NEW);
+        final boolean truncate = options.contains(StandardOpenOption.TRUNCATE_EXISTING);
+        if (truncate && !createNew && options.contains(StandardOpenOption.CREATE)) {
+            return true;
+        }
+        final boolean exists = exists(cosPath);
+        if (createNew && exists) {
+            throw new FileAlreadyExistsException(FilesEx.toUriString(cosPath));
+        }
+        if (!exists && !createNew && !options.contains(StandardOpenOption.CREATE)) {
+            throw new NoSuchFileException(FilesEx.toUriString(cosPath));
+        }
+        // the content of an existing object is kept unless truncated, use the local copy
+        return !exists || truncate;
+    }
+
+    private boolean isReadOnly(Set<? extends OpenOption> options) {
+        for (OpenOption it : options) {
+            if (it != StandardOpenOption.READ && it != LinkOption.NOFOLLOW_LINKS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * create a read only channel fetching the object content with range requests,
+     * the object size is taken from its metadata so nothing is downloaded upfront
+     *
+     * @param cosPath {@link CosPath}
+     * @return SeekableByteChannel
+     * @throws IOException if the object cannot be accessed
+     */
+    private SeekableByteChannel newReadChannel(CosPath cosPath) throws IOException {
+        Preconditions.checkArgument(!cosPath.getKey().equals(""),
+                "cannot create a channel for root directory: %s", FilesEx.toUriString(cosPath));
+
+        final CosClient client = cosPath.getFileSystem().getClient();
+        final ObjectMetadata metadata = getObjectMetadata(cosPath);
+        return new CosReadChannel(client, cosPath.getBucket(), cosPath.getKey(), metadata.getContentLength(),
+                client.getBlockCache(), metadata.getETag());
+    }
+
+    private ObjectMetadata getObjectMetadata(CosPath cosPath) throws IOException {
+        try {
+            return cosPath.getFileSystem().getClient().getObjectMetadata(cosPath.getBucket(), cosPath.getKey());
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() == 404) {
+                throw new NoSuchFileException(FilesEx.toUriString(cosPath));
+            }
+            throw new IOException(String.format("Cannot access file: %s", FilesEx.toUriString(cosPath)), e);
+        }
+    }
+
     /**
      * Deviations from spec: Does not perform atomic check-and-create. Since a
      * directory is just an Cos object, all directories in the hierarchy are
@@ -477,38 +677,92 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
                 "path must be an instance of %s", CosPath.class.getName());
 
         CosPath cosPath = (CosPath) path;
+        final CosClient client = cosPath.getFileSystem().getClient();
 
-        if (Files.notExists(path)) {
+        // the summary only tells a file from a directory, there is no request when it was fetched
+        // by a directory listing or it is cached
+        final COSObjectSummary summary;
+        try {
+            summary = cosObjectSummaryLookup.lookup(cosPath);
+        } catch (NoSuchFileException e) {
             throw new NoSuchFileException("the path: " + FilesEx.toUriString(cosPath) + " does not exist");
         }
 
-        if (Files.isDirectory(path)) {
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-                if (stream.iterator().hasNext()) {
-                    throw new DirectoryNotEmptyException("the path: "
-                            + FilesEx.toUriString(cosPath)
-                            + " is a directory and is not empty");
-                }
+        final String marker = cosPath.getKey() + "/";
+        if (summary.getKey().equals(cosPath.getKey())) {
+            // a stale directory marker with the same name goes away with the file, in the same request
+            client.deleteObjects(cosPath.getBucket(), Arrays.asList(cosPath.getKey(), marker));
+            return;
+        }
+
+        // a directory without marker object exists only because of its children
+        if (!summary.getKey().equals(marker) || hasChildren(client, cosPath.getBucket(), marker)) {
+            throw new DirectoryNotEmptyException("the path: "
+                    + FilesEx.toUriString(cosPath)
+                    + " is a directory and is not empty");
+        }
+        client.deleteObject(cosPath.getBucket(), marker);
+    }
+
+    private boolean hasChildren(CosClient client, String bucket, String marker) {
+        final ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(bucket);
+        request.setPrefix(marker);
+        request.setMaxKeys(2);
+        for (COSObjectSummary it : client.listObjects(request).getObjectSummaries()) {
+            if (!it.getKey().equals(marker)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * walkFileTree
+     * walk a file tree as {@link Files#walkFileTree(Path, Set, int, java.nio.file.FileVisitor)} does,
+     * listing the whole tree once without delimiter instead of once for each directory
+     *
+     * @param start the start path
+     * @param maxDepth max number of directory levels to visit
+     * @param visitor the file visitor
+     * @throws IOException if thrown by the visitor or if the tree cannot be listed
+     */
+    public void walkFileTree(Path start, int maxDepth, FileVisitor<? super Path> visitor) throws IOException {
+        Preconditions.checkArgument(start instanceof CosPath,
+                "path must be an instance of %s", CosPath.class.getName());
+        Preconditions.checkArgument(maxDepth >= 0, "maxDepth must not be negative");
 
-        // we delete the two objects (sometimes exists the key '/' and sometimes not)
-        cosPath.getFileSystem().getClient()
-                .deleteObject(cosPath.getBucket(), cosPath.getKey());
-        cosPath.getFileSystem().getClient()
-                .deleteObject(cosPath.getBucket(), cosPath.getKey() + "/");
+        new CosTreeWalker(this, maxDepth, visitor).walk((CosPath) start);
+    }
+
+    /**
+     * walkFileTree
+     * walk the whole file tree, see {@link #walkFileTree(Path, int, FileVisitor)}
+     */
+    public void walkFileTree(Path start, FileVisitor<? super Path> visitor) throws IOException {
+        walkFileTree(start, Integer.MAX_VALUE, visitor);
     }
 
     @Override
     public void copy(Path source, Path target, CopyOption... options)
             throws IOException {
+        copy0(source, target, options);
+    }
+
+    /**
+     * copy a single object, or all the objects of a directory with a server side copy
+     *
+     * @return the keys of the copied source objects when the source is a directory, otherwise null
+     */
+    private List<String> copy0(Path source, Path target, CopyOption... options)
+            throws IOException {
         Preconditions.checkArgument(source instanceof CosPath,
                 "source must be an instance of %s", CosPath.class.getName());
         Preconditions.checkArgument(target instanceof CosPath,
                 "target must be an instance of %s", CosPath.class.getName());
 
         if (isSameFile(source, target)) {
-            return;
+            return null;
         }
 
         CosPath cosSource = (CosPath) source;
@@ -531,26 +785,75 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         }
 
         CosClient client = cosSource.getFileSystem().getClient();
-
-        final ObjectMetadata sourceObjMetadata = cosSource.getFileSystem().
-                getClient().getObjectMetadata(cosSource.getBucket(), cosSource.getKey());
-        final CosMultipartOptions opts = new CosMultipartOptions();
+        final CosMultipartOptions opts = client.getConfig().getUploadOptions();
         final long maxSize = opts.getMaxCopySize();
-        final long length = sourceObjMetadata.getContentLength();
         final List<Tag> tags = ((CosPath) target).getTagsList();
         final String contentType = ((CosPath) target).getContentType();
         final String storageClass = ((CosPath) target).getStorageClass();
 
+        // when any object accepted by a plain copy is below the max copy size, the copy is
+        // attempted straight away and the source size is only fetched if it is rejected
+        if (maxSize >= CosMultipartOptions.DEFAULT_MAX_COPY_SIZE) {
+            try {
+                copyObject(client, cosSource, cosTarget, tags, contentType, storageClass);
+                return null;
+            } catch (CosServiceException e) {
+                if (e.getStatusCode() == 404) {
+                    return copyDirectory(cosSource, cosTarget);
+                }
+                if (e.getStatusCode() != 400) {
+                    throw e;
+                }
+                log.debug("Cos copy object rejected for {} -- checking source size -- Caused by: {}",
+                        FilesEx.toUriString(cosSource), e.getErrorCode());
+            }
+        }
+
+        final ObjectMetadata metadata;
+        try {
+            metadata = client.getObjectMetadata(cosSource.getBucket(), cosSource.getKey());
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return copyDirectory(cosSource, cosTarget);
+            }
+            throw e;
+        }
+        final long length = metadata.getContentLength();
         if (length <= maxSize) {
-            CopyObjectRequest copyObjRequest = new CopyObjectRequest(cosSource.getBucket(),
-                    cosSource.getKey(), cosTarget.getBucket(), cosTarget.getKey());
-            log.trace("Copy file via copy object - source: source={}, target={}, tags={}, storageClass={}",
-                    cosSource, cosTarget, tags, storageClass);
-            client.copyObject(copyObjRequest, tags, contentType, storageClass);
+            copyObject(client, cosSource, cosTarget, tags, contentType, storageClass);
         } else {
             log.trace("Copy file via multi upload - source: source={}, target={}, tags={}, storageClass={}",
                     cosSource, cosTarget, tags, storageClass);
-            client.multipartCopyObject(cosSource, cosTarget, length, opts, tags, contentType, storageClass);
+            client.multipartCopyObject(cosSource, cosTarget, length, metadata, opts, tags, contentType,
+                    storageClass);
+        }
+        return null;
+    }
+
+    /**
+     * there is no object with the source key, copy the source directory when it exists
+     */
+    private List<String> copyDirectory(CosPath cosSource, CosPath cosTarget) throws IOException {
+        final Optional<CosFileAttributes> attrs = readAttr1(cosSource);
+        if (!attrs.isPresent() || !attrs.get().isDirectory()) {
+            throw new NoSuchFileException(FilesEx.toUriString(cosSource));
+        }
+        log.trace("Copy directory via server side copy - source: {}, target: {}", cosSource, cosTarget);
+        return cosTarget.getFileSystem().getClient().copyDirectory(cosSource, cosTarget);
+    }
+
+    private void copyObject(CosClient client, CosPath cosSource, CosPath cosTarget, List<Tag> tags,
+            String contentType, String storageClass) {
+        CopyObjectRequest copyObjRequest = new CopyObjectRequest(cosSource.getBucket(),
+                cosSource.getKey(), cosTarget.getBucket(), cosTarget.getKey());
+        log.trace("Copy file via copy object - source: source={}, target={}, tags={}, storageClass={}",
+                cosSource, cosTarget, tags, storageClass);
+        try {
+            client.copyObject(copyObjRequest, tags, contentType, storageClass);
+        } finally {
+            // the request goes through the source client, the target may belong to another file system
+            cosTarget.getFileSystem().getClient().getAttributesCache()
+                    .invalidate(cosTarget.getBucket(), cosTarget.getKey());
         }
     }
 
@@ -563,8 +866,18 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
                         "Atomic move not supported by Cos file system provider");
             }
         }
-        copy(source, target, options);
-        delete(source);
+        if (isSameFile(source, target)) {
+            return;
+        }
+        final List<String> keys = copy0(source, target, options);
+        if (keys == null) {
+            delete(source);
+            return;
+        }
+        // a directory: drop all the copied objects, including the directory marker when any
+        final CosPath cosSource = (CosPath) source;
+        log.debug("Cos move directory {} - deleting {} source objects", FilesEx.toUriString(cosSource), keys.size());
+        cosSource.getFileSystem().getClient().deleteObjects(cosSource.getBucket(), keys);
     }
 
     @Override
@@ -692,6 +1005,44 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
         throw new UnsupportedOperationException(format("only %s supported", BasicFileAttributes.class));
     }
 
+    /**
+     * readAllAttributes
+     * read the attributes of many paths at once, the paths sharing a parent directory are
+     * resolved with a single listing instead of one or more requests each
+     *
+     * @param paths cos paths
+     * @return the attributes of the existing paths, in the order of the given paths
+     * @throws IOException if the attributes cannot be read
+     */
+    public Map<Path, BasicFileAttributes> readAllAttributes(Collection<? extends Path> paths) throws IOException {
+        final List<CosPath> cosPaths = new ArrayList<>(paths.size());
+        for (Path it : paths) {
+            Preconditions.checkArgument(it instanceof CosPath,
+                    "path must be an instance of %s", CosPath.class.getName());
+            cosPaths.add((CosPath) it);
+        }
+
+        final Map<CosPath, Optional<COSObjectSummary>> resolved = cosObjectSummaryLookup.lookupAll(cosPaths);
+        final Map<Path, BasicFileAttributes> result = new LinkedHashMap<>();
+        for (CosPath it : cosPaths) {
+            final Optional<COSObjectSummary> summary = resolved.get(it);
+            if (summary != null) {
+                if (!summary.isPresent()) {
+                    continue;
+                }
+                it.setObjectSummary(summary.get());
+            }
+            // the paths not resolved by a listing are looked up one by one
+            final Optional<CosFileAttributes> attrs = "".equals(it.getKey())
+                    ? Optional.of(new CosFileAttributes("/", null, 0, true, false))
+                    : readAttr1(it);
+            if (attrs.isPresent()) {
+                result.put(it, attrs.get());
+            }
+        }
+        return result;
+    }
+
     private Optional<CosFileAttributes> readAttr1(CosPath cosPath) throws IOException {
         try {
             return Optional.of(readAttr0(cosPath));
@@ -701,8 +1052,10 @@ public class CosFileSystemProvider extends FileSystemProvider implements FileSys
     }
 
     private CosFileAttributes readAttr0(CosPath cosPath) throws IOException {
-        COSObjectSummary objectSummary = cosObjectSummaryLookup.lookup(cosPath);
+        return toAttributes(cosPath, cosObjectSummaryLookup.lookup(cosPath));
+    }
 
+    private static CosFileAttributes toAttributes(CosPath cosPath, COSObjectSummary objectSummary) {
         // parse the data to BasicFileAttributes.
         FileTime lastModifiedTime = null;
         if (objectSummary.getLastModified() != null) {
@@ -6,9 +6,21 @@ import com.qcloud.cos.model.ListObjectsRequest;
 import com.qcloud.cos.model.ObjectListing;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import nextflow.tencentcloud.nio.util.CosAttributesCache;
+import nextflow.tencentcloud.nio.util.CosExecutors;
+
+/**
+ * CosIterator
+ * iterate the entries of a directory one listing page at a time, the next page is
+ * fetched in background while the current one is consumed, so that at most two pages
+ * are held in memory whatever the size of the directory
+ */
 public class CosIterator implements Iterator<Path> {
 
 //    private static final Logger log = LoggerFactory.getLogger(CosIterator.class);
@@ -18,6 +30,11 @@ public class CosIterator implements Iterator<Path> {
     private final String key;
 
     private Iterator<CosPath> it;
+    // the listing of the next page, null when the current page is the last one
+    private CompletableFuture<ObjectListing> nextPage;
+    // the lister of the concurrent key ranges, when the list parallelism is greater than one
+    private CosParallelLister lister;
+    private volatile boolean closed;
 
     public CosIterator(CosFileSystem cosFileSystem, String bucket, String key) {
 
@@ -37,27 +54,98 @@ public class CosIterator implements Iterator<Path> {
 
     @Override
     public CosPath next() {
-        return getIterator().next();
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return it.next();
     }
 
     @Override
     public boolean hasNext() {
-        return getIterator().hasNext();
+        if (it == null) {
+            final int parallelism = cosFileSystem.getClient().getConfig().getDownloadOptions().getListParallelism();
+            it = parallelism > 1
+                    ? parallelIterator(parallelism)
+                    : nextIterator(cosFileSystem.getClient().listObjects(buildRequest()));
+        }
+        while (!it.hasNext() && nextPage != null && !closed) {
+            it = nextIterator(awaitPage(nextPage));
+        }
+        return it.hasNext();
     }
 
-    private Iterator<CosPath> getIterator() {
-        if (it == null) {
-            List<CosPath> listPath = new ArrayList<>();
-            ObjectListing current = cosFileSystem.getClient().listObjects(buildRequest());
-            while (current.isTruncated()) {
-                parseObjectListing(listPath, current);
-                current = cosFileSystem.getClient().listNextBatchOfObjects(current);
-            }
-            parseObjectListing(listPath, current);
-            it = listPath.iterator();
+    /**
+     * stop prefetching the next page, or listing the key ranges ahead
+     */
+    public void close() {
+        closed = true;
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+        if (lister != null) {
+            lister.close();
         }
+    }
 
-        return it;
+    /**
+     * start fetching the page following the given one and return the entries of the given page
+     */
+    private Iterator<CosPath> nextIterator(ObjectListing current) {
+        nextPage = current.isTruncated() && !closed
+                ? CompletableFuture.supplyAsync(() -> cosFileSystem.getClient().listNextBatchOfObjects(current),
+                        CosExecutors.getOrCreate("CosListPrefetch",
+                                cosFileSystem.getClient().getConfig().getDownloadOptions().getMaxThreads()))
+                : null;
+        final List<CosPath> listPath = new ArrayList<>();
+        parseObjectListing(listPath, current);
+        return listPath.isEmpty() ? Collections.<CosPath>emptyIterator() : listPath.iterator();
+    }
+
+    /**
+     * the entries listed by concurrent ranges of the key space, in key order
+     */
+    private Iterator<CosPath> parallelIterator(int parallelism) {
+        final CosAttributesCache cache = cosFileSystem.getClient().getAttributesCache();
+        lister = new CosParallelLister(cosFileSystem.getClient(), bucket, key, "/", parallelism);
+        final Iterator<CosParallelLister.Entry> entries = lister.iterator(key.isEmpty() ? null : key);
+        return new Iterator<CosPath>() {
+            private CosPath next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && entries.hasNext()) {
+                    final CosParallelLister.Entry entry = entries.next();
+                    if (!entry.isPrefix()) {
+                        next = filePath(cache, entry.getSummary());
+                    } else if (!entry.getKey().equals("/")) {
+                        next = directoryPath(cache, entry.getKey());
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public CosPath next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final CosPath result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    private static ObjectListing awaitPage(CompletableFuture<ObjectListing> page) {
+        try {
+            return page.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     private ListObjectsRequest buildRequest() {
@@ -70,13 +158,10 @@ public class CosIterator implements Iterator<Path> {
     }
 
     private void parseObjectListing(List<CosPath> listPath, ObjectListing current) {
+        final CosAttributesCache cache = cosFileSystem.getClient().getAttributesCache();
         for (final COSObjectSummary objectSummary : current.getObjectSummaries()) {
-            final String key = objectSummary.getKey();
-
 //            log.debug("parseObjectListing, CosPath, bucket: {}, Key: {}", bucket, key);
-            final CosPath path = new CosPath(cosFileSystem, "/" + bucket, key.split("/"));
-            path.setObjectSummary(objectSummary);
-            listPath.add(path);
+            listPath.add(filePath(cache, objectSummary));
         }
 
         for (final String dir : current.getCommonPrefixes()) {
@@ -84,7 +169,24 @@ public class CosIterator implements Iterator<Path> {
                 continue;
             }
 //            log.debug("parseObjectListing, CosPath, bucket: {}, dir: {}", bucket, dir);
-            listPath.add(new CosPath(cosFileSystem, "/" + bucket, dir));
+            listPath.add(directoryPath(cache, dir));
         }
     }
+
+    private CosPath filePath(CosAttributesCache cache, COSObjectSummary objectSummary) {
+        final String key = objectSummary.getKey();
+        cache.put(bucket, key, objectSummary);
+        final CosPath path = new CosPath(cosFileSystem, "/" + bucket, key.split("/"));
+        path.setObjectSummary(objectSummary);
+        return path;
+    }
+
+    private CosPath directoryPath(CosAttributesCache cache, String dir) {
+        // the sub directory is known to exist, its summary is the one of a directory marker
+        final COSObjectSummary summary = new COSObjectSummary();
+        summary.setBucketName(bucket);
+        summary.setKey(dir);
+        cache.put(bucket, dir.substring(0, dir.length() - 1), summary);
+        return new CosPath(cosFileSystem, "/" + bucket, dir);
+    }
 }
@@ -0,0 +1,287 @@
+package nextflow.tencentcloud.nio;
+
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.model.AbortMultipartUploadRequest;
+import com.qcloud.cos.model.CompleteMultipartUploadRequest;
+import com.qcloud.cos.model.CopyPartRequest;
+import com.qcloud.cos.model.CopyPartResult;
+import com.qcloud.cos.model.ObjectMetadata;
+import com.qcloud.cos.model.ObjectTagging;
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.SetObjectTaggingRequest;
+import com.qcloud.cos.model.Tag.Tag;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import nextflow.tencentcloud.nio.util.CosExecutors;
+import nextflow.tencentcloud.nio.util.CosMultipartOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosMultipartCopier
+ * server side copy of an object with a multipart upload whose parts are copied from the
+ * source object. the part copies of all the copies to a region run on a shared pool, each
+ * copy runs at most as many parts at the same time as given by its size
+ */
+public class CosMultipartCopier {
+
+    private static final Logger log = LoggerFactory.getLogger(CosMultipartCopier.class);
+
+    private final COSClient client;
+    private final CosMultipartOptions opts;
+    private final ExecutorService executor;
+
+    /**
+     * @param client cos client of the target region
+     * @param region target region
+     * @param opts upload options
+     */
+    public CosMultipartCopier(COSClient client, String region, CosMultipartOptions opts) {
+        this.client = client;
+        this.opts = opts;
+        this.executor = CosExecutors.getOrCreate("CosMultipartCopier-" + region, opts.getCopyMaxThreads());
+    }
+
+    /**
+     * copy
+     * copy the source object into the target object, a failed copy is aborted
+     *
+     * @param source cos source path
+     * @param sourceRegion region of the source bucket
+     * @param target cos target path
+     * @param objectSize source object size
+     * @param sourceMetadata source object metadata, carried over to the target, or null
+     * @param contentType target content type, or null to keep the source one
+     * @param storageClass target storage class, or null
+     * @param tags target tags, or null
+     * @throws IOException if the object cannot be copied
+     */
+    public void copy(CosPath source, String sourceRegion, CosPath target, long objectSize,
+            ObjectMetadata sourceMetadata, String contentType, String storageClass, List<Tag> tags)
+            throws IOException {
+        final String bucket = target.getBucket();
+        final String key = target.getKey();
+        final long partSize = opts.copyPartSizeFor(objectSize);
+        final int partsCount = (int) Math.max(1, (objectSize + partSize - 1) / partSize);
+        final int concurrency = Math.min(opts.copyConcurrencyFor(objectSize), partsCount);
+
+        final String uploadId = CosMultipartUploader.initiate(client, bucket, key, storageClass,
+                targetMetadata(sourceMetadata, contentType));
+        log.debug("Cos copy {} to cos://{}/{} size: {}; parts: {}; concurrency: {}; uploadId: {}",
+                source.toUri(), bucket, key, objectSize, partsCount, concurrency, uploadId);
+
+        final CopyJob job = new CopyJob(source, sourceRegion, bucket, key, uploadId, objectSize, partSize,
+                partsCount);
+        boolean success = false;
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                job.startLane();
+            }
+            CosExecutors.awaitAll(job.results, "copy", "cos://" + bucket + "/" + key);
+
+            final List<PartETag> etags = new ArrayList<>(partsCount);
+            for (CompletableFuture<PartETag> it : job.results) {
+                etags.add(it.join());
+            }
+            try {
+                client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+            } catch (CosClientException e) {
+                throw new IOException("Failed to complete Tencent Cos multipart copy", e);
+            }
+            log.trace("Completed copy to cos://{}/{} consisting of {} parts", bucket, key, partsCount);
+            success = true;
+        } finally {
+            if (!success) {
+                abort(bucket, key, uploadId);
+            }
+        }
+
+        if (tags != null && !tags.isEmpty()) {
+            try {
+                client.setObjectTagging(new SetObjectTaggingRequest(bucket, key, new ObjectTagging(tags)));
+            } catch (CosClientException e) {
+                throw new IOException(String.format("Failed to tag cos://%s/%s", bucket, key), e);
+            }
+        }
+    }
+
+    /**
+     * the metadata of the target, as a plain copy does: the headers and the user metadata of
+     * the source, with the given content type when not null
+     */
+    private static ObjectMetadata targetMetadata(ObjectMetadata source, String contentType) {
+        if (source == null && contentType == null) {
+            return null;
+        }
+        final ObjectMetadata result = new ObjectMetadata();
+        if (source != null) {
+            result.setContentType(source.getContentType());
+            result.setContentEncoding(source.getContentEncoding());
+            result.setContentDisposition(source.getContentDisposition());
+            result.setCacheControl(source.getCacheControl());
+            if (source.getUserMetadata() != null) {
+                result.setUserMetadata(source.getUserMetadata());
+            }
+        }
+        if (contentType != null) {
+            result.setContentType(contentType);
+        }
+        return result;
+    }
+
+    /**
+     * CopyJob
+     * the parts of a copy, each lane copies one part at a time and picks the next
+     * one when done, so that the copy holds at most one pool thread per lane
+     */
+    private class CopyJob {
+        final List<CompletableFuture<PartETag>> results;
+        final AtomicInteger nextPart = new AtomicInteger();
+        final CosPath source;
+        final String sourceRegion;
+        final String bucket;
+        final String key;
+        final String uploadId;
+        final long objectSize;
+        final long partSize;
+
+        CopyJob(CosPath source, String sourceRegion, String bucket, String key, String uploadId, long objectSize,
+                long partSize, int partsCount) {
+            this.source = source;
+            this.sourceRegion = sourceRegion;
+            this.bucket = bucket;
+            this.key = key;
+            this.uploadId = uploadId;
+            this.objectSize = objectSize;
+            this.partSize = partSize;
+            this.results = new ArrayList<>(partsCount);
+            for (int i = 0; i < partsCount; i++) {
+                results.add(new CompletableFuture<>());
+            }
+        }
+
+        void startLane() {
+            final int index = nextPart.getAndIncrement();
+            if (index < results.size()) {
+                final PartTask task = new PartTask(this, index);
+                try {
+                    executor.execute(task);
+                } catch (RuntimeException e) {
+                    failRemaining(index, e);
+                }
+            }
+        }
+
+        /**
+         * fail the given part and the ones not started yet, so that the caller stops waiting
+         */
+        void failRemaining(int index, Throwable cause) {
+            results.get(index).completeExceptionally(cause);
+            int next;
+            while ((next = nextPart.getAndIncrement()) < results.size()) {
+                results.get(next).completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * PartTask
+     * one attempt at copying a part, a failed attempt schedules the next one
+     * after the backoff delay instead of sleeping in the copy thread
+     */
+    private class PartTask implements Runnable {
+        final CopyJob job;
+        int index;
+        int attempt;
+
+        PartTask(CopyJob job, int index) {
+            this.job = job;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            final CompletableFuture<PartETag> result = job.results.get(index);
+            if (result.isDone()) {
+                return;
+            }
+            attempt++;
+            try {
+                result.complete(copyPart(job, index + 1));
+            } catch (CosClientException e) {
+                if (attempt >= opts.getMaxAttempts()) {
+                    job.failRemaining(index, new IOException(String.format(
+                            "Failed to copy part %d of cos://%s/%s", index + 1, job.bucket, job.key), e));
+                    return;
+                }
+                final long delay = opts.retryDelay(attempt);
+                log.debug("Failed to copy part {} attempt {} of cos://{}/{} -- retrying in {} ms -- Caused by: {}",
+                        index + 1, attempt, job.bucket, job.key, delay, e.getMessage());
+                retryLater(delay);
+                return;
+            } catch (RuntimeException e) {
+                job.failRemaining(index, e);
+                return;
+            }
+
+            // move on to the next part of the copy
+            index = job.nextPart.getAndIncrement();
+            attempt = 0;
+            if (index < job.results.size()) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    job.failRemaining(index, e);
+                }
+            }
+        }
+
+        private void retryLater(long delay) {
+            try {
+                CosMultipartUploader.getOrCreateRetryScheduler().schedule(() -> {
+                    try {
+                        executor.execute(this);
+                    } catch (RuntimeException e) {
+                        job.failRemaining(index, e);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                job.failRemaining(index, e);
+            }
+        }
+    }
+
+    private PartETag copyPart(CopyJob job, int partNumber) {
+        final long start = (partNumber - 1) * job.partSize;
+        final long end = Math.min(start + job.partSize, job.objectSize) - 1;
+        final CopyPartRequest request = new CopyPartRequest();
+        request.setSourceBucketRegion(job.sourceRegion);
+        request.setSourceBucketName(job.source.getBucket());
+        request.setSourceKey(job.source.getKey());
+        request.setDestinationBucketName(job.bucket);
+        request.setDestinationKey(job.key);
+        request.setUploadId(job.uploadId);
+        request.setPartNumber(partNumber);
+        request.setFirstByte(start);
+        request.setLastByte(end);
+
+        final CopyPartResult result = client.copyPart(request);
+        log.trace("Copied part {} with range {}-{} for cos://{}/{}", partNumber, start, end, job.bucket, job.key);
+        return result.getPartETag();
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        log.debug("Aborting multipart copy {} for cos://{}/{}", uploadId, bucket, key);
+        try {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (CosClientException e) {
+            log.warn("Failed to abort multipart copy {}: {}", uploadId, e.getMessage());
+        }
+    }
+}
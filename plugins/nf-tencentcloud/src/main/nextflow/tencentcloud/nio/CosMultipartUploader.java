@@ -0,0 +1,380 @@
+package nextflow.tencentcloud.nio;
+
+import com.qcloud.cos.COSClient;
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.exception.CosServiceException;
+import com.qcloud.cos.model.AbortMultipartUploadRequest;
+import com.qcloud.cos.model.CompleteMultipartUploadRequest;
+import com.qcloud.cos.model.CompleteMultipartUploadResult;
+import com.qcloud.cos.model.InitiateMultipartUploadRequest;
+import com.qcloud.cos.model.ListPartsRequest;
+import com.qcloud.cos.model.ObjectMetadata;
+import com.qcloud.cos.model.PartETag;
+import com.qcloud.cos.model.PartListing;
+import com.qcloud.cos.model.PartSummary;
+import com.qcloud.cos.model.StorageClass;
+import com.qcloud.cos.model.UploadPartRequest;
+import com.qcloud.cos.model.UploadPartResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import nextflow.tencentcloud.nio.util.AdaptiveConcurrency;
+import nextflow.tencentcloud.nio.util.CosExecutors;
+import nextflow.tencentcloud.nio.util.CosMultipartOptions;
+import nextflow.tencentcloud.nio.util.CosUploadCheckpoint;
+import nextflow.tencentcloud.nio.util.Crc64;
+import nextflow.tencentcloud.nio.util.FileRegionInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosMultipartUploader
+ * upload a local file with a multipart upload, the file is split into regions read
+ * with positional reads and uploaded concurrently. a failed part is retried with an
+ * exponential backoff without holding an upload thread while waiting
+ */
+public class CosMultipartUploader {
+
+    private static final Logger log = LoggerFactory.getLogger(CosMultipartUploader.class);
+
+    private final COSClient client;
+    private final CosMultipartOptions opts;
+    private final ExecutorService executor;
+    private final AdaptiveConcurrency concurrency;
+
+    public CosMultipartUploader(COSClient client, CosMultipartOptions opts) {
+        this.client = client;
+        this.opts = opts;
+        this.executor = CosExecutors.getOrCreate("CosMultipartUploader", opts.getMaxThreads());
+        this.concurrency = opts.isAdaptive() ? CosOutputStream.getOrCreateConcurrency(opts.getMaxThreads()) : null;
+    }
+
+    /**
+     * upload
+     * upload the local file into the target object. when the upload checkpoint is enabled
+     * the uploaded parts are recorded, a failed upload is left pending and a later upload
+     * of the same file only sends the missing parts, otherwise a failed upload is aborted
+     *
+     * @param source local source file
+     * @param target cos target path
+     * @throws IOException if the file cannot be uploaded
+     */
+    public void upload(File source, CosPath target) throws IOException {
+        final String bucket = target.getBucket();
+        final String key = target.getKey();
+        final long size = source.length();
+        final long partSize = opts.partSizeFor(size);
+        final int partsCount = (int) ((size + partSize - 1) / partSize);
+        if (partsCount > CosMultipartOptions.MAX_PARTS) {
+            throw new IOException(String.format(
+                    "Cannot upload %s - %d parts of %d bytes exceed the max number of parts",
+                    source, partsCount, partSize));
+        }
+
+        final CosUploadCheckpoint checkpoint = opts.isCheckpoint()
+                ? CosUploadCheckpoint.load(checkpointDir(opts), bucket, key, source.getAbsolutePath(), size,
+                        source.lastModified(), partSize)
+                : null;
+        final String uploadId = resumeOrInitiate(target, checkpoint);
+        log.debug("Cos upload {} to cos://{}/{} size: {}; parts: {}; completed: {}; uploadId: {}",
+                source, bucket, key, size, partsCount,
+                checkpoint != null ? checkpoint.completedCount() : 0, uploadId);
+
+        boolean success = false;
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            final List<CompletableFuture<CosUploadCheckpoint.Part>> futures = new ArrayList<>(partsCount);
+            for (int i = 0; i < partsCount; i++) {
+                final int partNumber = i + 1;
+                final long start = i * partSize;
+                final long length = Math.min(partSize, size - start);
+                final CosUploadCheckpoint.Part done = checkpoint != null ? checkpoint.getPart(partNumber) : null;
+                if (done != null && done.getOffset() == start && done.getLength() == length) {
+                    futures.add(CompletableFuture.completedFuture(done));
+                    continue;
+                }
+                final PartTask task = new PartTask(channel, bucket, key, uploadId, partNumber, start, length,
+                        checkpoint);
+                executor.execute(task);
+                futures.add(task.result);
+            }
+            CosExecutors.awaitAll(futures, "upload", "cos://" + bucket + "/" + key);
+
+            final List<CosUploadCheckpoint.Part> parts = new ArrayList<>(partsCount);
+            for (CompletableFuture<CosUploadCheckpoint.Part> it : futures) {
+                parts.add(it.join());
+            }
+            complete(bucket, key, uploadId, parts);
+            success = true;
+        } finally {
+            if (success && checkpoint != null) {
+                checkpoint.delete();
+            } else if (!success && checkpoint == null) {
+                abort(bucket, key, uploadId);
+            } else if (!success) {
+                log.debug("Keeping multipart upload {} for cos://{}/{} to be resumed", uploadId, bucket, key);
+            }
+        }
+    }
+
+    /**
+     * continue the upload recorded in the checkpoint, when it is still pending, otherwise
+     * initiate a new one
+     */
+    private String resumeOrInitiate(CosPath target, CosUploadCheckpoint checkpoint) throws IOException {
+        if (checkpoint != null && checkpoint.getUploadId() != null) {
+            final Map<Integer, CosUploadCheckpoint.Part> uploaded =
+                    listParts(client, target.getBucket(), target.getKey(), checkpoint.getUploadId());
+            if (uploaded != null) {
+                checkpoint.retain(uploaded);
+                return checkpoint.getUploadId();
+            }
+            log.debug("Multipart upload {} for {} no longer exists -- starting a new one",
+                    checkpoint.getUploadId(), target.toUri());
+        }
+        final String uploadId = initiate(client, target.getBucket(), target.getKey(),
+                target.getStorageClass(), target.getContentType());
+        if (checkpoint != null) {
+            checkpoint.start(uploadId);
+        }
+        return uploadId;
+    }
+
+    /**
+     * PartTask
+     * one attempt at uploading a part, a failed attempt schedules the next one
+     * after the backoff delay instead of sleeping in the upload thread
+     */
+    private class PartTask implements Runnable {
+        final CompletableFuture<CosUploadCheckpoint.Part> result = new CompletableFuture<>();
+        final FileChannel channel;
+        final String bucket;
+        final String key;
+        final String uploadId;
+        final int partNumber;
+        final long start;
+        final long length;
+        final CosUploadCheckpoint checkpoint;
+        int attempt;
+
+        PartTask(FileChannel channel, String bucket, String key, String uploadId, int partNumber,
+                long start, long length, CosUploadCheckpoint checkpoint) {
+            this.channel = channel;
+            this.bucket = bucket;
+            this.key = key;
+            this.uploadId = uploadId;
+            this.partNumber = partNumber;
+            this.start = start;
+            this.length = length;
+            this.checkpoint = checkpoint;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+            attempt++;
+            boolean acquired = false;
+            boolean success = false;
+            try {
+                if (concurrency != null) {
+                    concurrency.acquire();
+                    acquired = true;
+                }
+                final CosUploadCheckpoint.Part part = uploadPart(channel, bucket, key, uploadId,
+                        partNumber, start, length);
+                if (checkpoint != null) {
+                    checkpoint.complete(partNumber, part);
+                }
+                success = true;
+                result.complete(part);
+            } catch (InterruptedIOException e) {
+                result.completeExceptionally(e);
+            } catch (CosClientException | IOException e) {
+                if (attempt >= opts.getMaxAttempts()) {
+                    result.completeExceptionally(new IOException(String.format(
+                            "Failed to upload part %d of cos://%s/%s", partNumber, bucket, key), e));
+                    return;
+                }
+                final long delay = opts.retryDelay(attempt);
+                log.debug("Failed to upload part {} attempt {} of cos://{}/{} -- retrying in {} ms -- Caused by: {}",
+                        partNumber, attempt, bucket, key, delay, e.getMessage());
+                retryLater(this, delay, result);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (acquired) {
+                    concurrency.release(success ? length : 0);
+                }
+            }
+        }
+    }
+
+    private void retryLater(Runnable task, long delay, CompletableFuture<?> result) {
+        try {
+            getOrCreateRetryScheduler().schedule(() -> {
+                try {
+                    executor.execute(task);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private CosUploadCheckpoint.Part uploadPart(FileChannel channel, String bucket, String key, String uploadId,
+            int partNumber, long start, long length) throws IOException {
+        final FileRegionInputStream content = new FileRegionInputStream(channel, start, length);
+        final UploadPartRequest request = new UploadPartRequest();
+        request.setBucketName(bucket);
+        request.setKey(key);
+        request.setUploadId(uploadId);
+        request.setPartNumber(partNumber);
+        request.setPartSize(length);
+        request.setInputStream(content);
+
+        final UploadPartResult result = client.uploadPart(request);
+        final Long expected = content.getCrc64();
+        final Long actual = Crc64.parse(result.getCrc64Ecma());
+        if (expected != null && actual != null && !expected.equals(actual)) {
+            throw new IOException(String.format(
+                    "Checksum mismatch for part %d of cos://%s/%s - expected crc64: %s; found: %s",
+                    partNumber, bucket, key, Crc64.toString(expected), Crc64.toString(actual)));
+        }
+        log.trace("Uploaded part {} with length {} for cos://{}/{}", partNumber, length, bucket, key);
+        return new CosUploadCheckpoint.Part(result.getPartETag().getETag(), expected, start, length);
+    }
+
+    private void complete(String bucket, String key, String uploadId, List<CosUploadCheckpoint.Part> parts)
+            throws IOException {
+        final List<PartETag> etags = new ArrayList<>(parts.size());
+        Long crc = 0L;
+        for (int i = 0; i < parts.size(); i++) {
+            final CosUploadCheckpoint.Part it = parts.get(i);
+            etags.add(new PartETag(i + 1, it.getEtag()));
+            crc = crc != null && it.getCrc() != null ? Crc64.combine(crc, it.getCrc(), it.getLength()) : null;
+        }
+
+        final CompleteMultipartUploadResult result;
+        try {
+            result = client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+        } catch (CosClientException e) {
+            throw new IOException("Failed to complete Tencent Cos multipart upload", e);
+        }
+        final Long actual = Crc64.parse(result.getCrc64Ecma());
+        if (crc != null && actual != null && !crc.equals(actual)) {
+            throw new IOException(String.format("Checksum mismatch for cos://%s/%s - expected crc64: %s; found: %s",
+                    bucket, key, Crc64.toString(crc), Crc64.toString(actual)));
+        }
+        log.trace("Completed upload to cos://{}/{} consisting of {} parts", bucket, key, etags.size());
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        log.debug("Aborting multipart upload {} for cos://{}/{}", uploadId, bucket, key);
+        try {
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (CosClientException e) {
+            log.warn("Failed to abort multipart upload {}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    static String initiate(COSClient client, String bucket, String key, String storageClass, String contentType)
+            throws IOException {
+        ObjectMetadata metadata = null;
+        if (contentType != null) {
+            metadata = new ObjectMetadata();
+            metadata.setContentType(contentType);
+        }
+        return initiate(client, bucket, key, storageClass, metadata);
+    }
+
+    /**
+     * initiate
+     * start a multipart upload of an object with the given metadata, or none when null
+     */
+    static String initiate(COSClient client, String bucket, String key, String storageClass, ObjectMetadata metadata)
+            throws IOException {
+        final InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucket, key);
+        if (storageClass != null) {
+            request.setStorageClass(StorageClass.fromValue(storageClass));
+        }
+        if (metadata != null) {
+            request.setObjectMetadata(metadata);
+        }
+        final String uploadId;
+        try {
+            uploadId = client.initiateMultipartUpload(request).getUploadId();
+        } catch (CosClientException e) {
+            throw new IOException("Failed to initiate Tencent Cos multipart upload", e);
+        }
+        if (uploadId == null) {
+            throw new IOException("Failed to get a valid multipart upload ID from Tencent Cos");
+        }
+        return uploadId;
+    }
+
+    /**
+     * listParts
+     * list the parts uploaded so far by a multipart upload
+     *
+     * @return the parts by part number, or null when the upload does not exist anymore
+     */
+    static Map<Integer, CosUploadCheckpoint.Part> listParts(COSClient client, String bucket, String key,
+            String uploadId) throws IOException {
+        final Map<Integer, CosUploadCheckpoint.Part> result = new HashMap<>();
+        final ListPartsRequest request = new ListPartsRequest(bucket, key, uploadId);
+        try {
+            PartListing listing;
+            do {
+                listing = client.listParts(request);
+                for (PartSummary it : listing.getParts()) {
+                    result.put(it.getPartNumber(), new CosUploadCheckpoint.Part(it.getETag(), null, -1, it.getSize()));
+                }
+                request.setPartNumberMarker(listing.getNextPartNumberMarker());
+            } while (listing.isTruncated());
+        } catch (CosServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw new IOException("Failed to list parts of Tencent Cos multipart upload " + uploadId, e);
+        } catch (CosClientException e) {
+            throw new IOException("Failed to list parts of Tencent Cos multipart upload " + uploadId, e);
+        }
+        return result;
+    }
+
+    static Path checkpointDir(CosMultipartOptions opts) {
+        return opts.getCheckpointDir() != null ? Paths.get(opts.getCheckpointDir()) : CosUploadCheckpoint.defaultDir();
+    }
+
+    private static volatile ScheduledExecutorService retrySchedulerSingleton;
+
+    /**
+     * single thread resubmitting the failed parts to the upload executors once their backoff has elapsed
+     */
+    static synchronized ScheduledExecutorService getOrCreateRetryScheduler() {
+        if (retrySchedulerSingleton == null) {
+            retrySchedulerSingleton = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "CosUploadRetry");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return retrySchedulerSingleton;
+    }
+}
@@ -7,18 +7,21 @@ import com.qcloud.cos.exception.CosClientException;
 import com.qcloud.cos.model.AbortMultipartUploadRequest;
 import com.qcloud.cos.model.COSObjectId;
 import com.qcloud.cos.model.CompleteMultipartUploadRequest;
+import com.qcloud.cos.model.CompleteMultipartUploadResult;
 import com.qcloud.cos.model.InitiateMultipartUploadRequest;
 import com.qcloud.cos.model.InitiateMultipartUploadResult;
 import com.qcloud.cos.model.ObjectMetadata;
 import com.qcloud.cos.model.PartETag;
 import com.qcloud.cos.model.PutObjectRequest;
+import com.qcloud.cos.model.PutObjectResult;
 import com.qcloud.cos.model.SSEAlgorithm;
 import com.qcloud.cos.model.StorageClass;
 import com.qcloud.cos.model.UploadPartRequest;
+import com.qcloud.cos.model.UploadPartResult;
 import com.qcloud.cos.utils.Base64;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -26,15 +29,24 @@ import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Phaser;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import nextflow.tencentcloud.nio.util.AdaptiveConcurrency;
 import nextflow.tencentcloud.nio.util.ByteBufferInputStream;
+import nextflow.tencentcloud.nio.util.ByteBufferPool;
+import nextflow.tencentcloud.nio.util.CosAttributesCache;
+import nextflow.tencentcloud.nio.util.CosExecutors;
 import nextflow.tencentcloud.nio.util.CosMultipartOptions;
-import nextflow.util.ThreadPoolManager;
+import nextflow.tencentcloud.nio.util.CosUploadCheckpoint;
+import nextflow.tencentcloud.nio.util.Crc64;
+import nextflow.tencentcloud.nio.util.UploadMemoryBudget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +54,15 @@ public final class CosOutputStream extends OutputStream {
     private static final Logger log = LoggerFactory.getLogger(CosOutputStream.class);
 
     private static final int MIN_MULTIPART_UPLOAD = 5 * 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 100 * 1024;
+
+    /**
+     * max bytes of idle part buffers kept for reuse by all the streams, never more than
+     * a quarter of the upload memory
+     */
+    private static final long MAX_POOLED_BYTES = 256L * 1024 * 1024;
+
     private final COSClient cosClient;
     private final COSObjectId objectId;
     private StorageClass storageClass;
@@ -52,27 +73,45 @@ public final class CosOutputStream extends OutputStream {
     private volatile String uploadId;
     private Queue<PartETag> partETags;
     private final CosMultipartOptions request;
-    private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
     private ExecutorService executor;
     private ByteBuffer buf;
-    private MessageDigest md5;
     private Phaser phaser;
     private int partsCount;
-    private final int bufferSize;
-    private final AtomicInteger bufferCounter = new AtomicInteger();
+    // object offset of the next part submitted for upload
+    private long submittedBytes;
+    // size of the part being buffered, it can grow with the number of parts in adaptive mode
+    private int bufferSize;
+    private final UploadMemoryBudget budget;
+    private final ByteBufferPool bufferPool;
+    // the part of the budget held by this stream, released if the stream is dropped without being closed
+    private final UploadMemoryBudget.Reservation reservation;
+    private final AdaptiveConcurrency concurrency;
+    // crc64 of each part computed by the upload tasks, combined in part order on completion
+    private final ConcurrentSkipListMap<Integer, PartChecksum> partChecksums = new ConcurrentSkipListMap<>();
+    // parts uploaded by a previous run of the same upload, only when the checkpoint is enabled
+    private CosUploadCheckpoint checkpoint;
+    // the error of a part which exhausted its attempts, reported to the writer
+    private volatile IOException failure;
+    // filled with the summary of the object once uploaded
+    private CosAttributesCache attributesCache;
 
     public CosOutputStream(final COSClient cosClient, COSObjectId objectId, CosMultipartOptions request) {
         this.cosClient = requireNonNull(cosClient);
         this.objectId = requireNonNull(objectId);
         this.request = request;
-        this.bufferSize = request.getBufferSize();
+        this.bufferSize = request.streamPartSize(1);
+        this.budget = getOrCreateBudget(request.getMaxMemory());
+        this.bufferPool = poolSingleton;
+        this.reservation = budget.reservation(this, "cos://" + objectId.getBucket() + "/" + objectId.getKey());
+        this.concurrency = request.isAdaptive() ? getOrCreateConcurrency(request.getMaxThreads()) : null;
     }
 
-    private ByteBuffer expandBuffer(ByteBuffer byteBuffer) {
-        final float expandFactor = 2.5f;
-        final int newCapacity = Math.min((int) (byteBuffer.capacity() * expandFactor), bufferSize);
+    /**
+     * move the content of the small initial buffer into a full size pooled buffer
+     */
+    private ByteBuffer expandBuffer(ByteBuffer byteBuffer) throws IOException {
         ((java.nio.Buffer) byteBuffer).flip();
-        ByteBuffer expanded = ByteBuffer.allocate(newCapacity);
+        final ByteBuffer expanded = acquireBuffer();
         expanded.order(byteBuffer.order());
         expanded.put(byteBuffer);
         return expanded;
@@ -90,6 +129,17 @@ public final class CosOutputStream extends OutputStream {
         return this;
     }
 
+    public CosOutputStream setAttributesCache(CosAttributesCache cache) {
+        this.attributesCache = cache;
+        return this;
+    }
+
+    private void uploaded(long size, String etag) {
+        if (attributesCache != null) {
+            attributesCache.putObject(objectId.getBucket(), objectId.getKey(), size, etag);
+        }
+    }
+
     private MessageDigest createMd5() {
         try {
             return MessageDigest.getInstance("MD5");
@@ -103,50 +153,83 @@ public final class CosOutputStream extends OutputStream {
         if (closed) {
             throw new IOException("Can't write into a closed stream");
         }
+        ensureBuffer(1);
+        buf.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Can't write into a closed stream");
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            ensureBuffer(len);
+            final int n = Math.min(len, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * make sure the current buffer has room for the next write, the small initial
+     * buffer is replaced by a full size one as soon as the data does not fit in it
+     */
+    private void ensureBuffer(int len) throws IOException {
         if (buf == null) {
             buf = allocate();
-            md5 = createMd5();
-        } else if (!buf.hasRemaining()) {
-            if (buf.position() < bufferSize) {
-                buf = expandBuffer(buf);
-            } else {
-                flush();
-                // create a new buffer
-                buf = allocate();
-                md5 = createMd5();
-            }
         }
-
-        buf.put((byte) b);
-        // update the md5 checksum
-        md5.update((byte) b);
+        if (buf.remaining() >= len || (buf.hasRemaining() && !isInitialBuffer(buf))) {
+            return;
+        }
+        if (isInitialBuffer(buf)) {
+            buf = expandBuffer(buf);
+        } else {
+            flush();
+            // create a new buffer
+            buf = allocate();
+        }
     }
 
     @Override
     public void flush() throws IOException {
         if (uploadBuffer(buf, false)) {
             buf = null;
-            md5 = null;
         }
     }
 
-    private ByteBuffer allocate() {
+    private ByteBuffer allocate() throws IOException {
 
         if (partsCount == 0) {
-            final int initialSize = 100 * 1024;
-            return ByteBuffer.allocate(initialSize);
+            // most outputs are small, start with a buffer not taken from the pool
+            return ByteBuffer.allocate(Math.min(INITIAL_BUFFER_SIZE, bufferSize));
         }
 
-        ByteBuffer result = bufferPool.poll();
-        if (result != null) {
-            result.clear();
-        } else {
-            log.debug("Allocating new buffer of {} bytes, total buffers {}",
-                    bufferSize, bufferCounter.incrementAndGet());
-            result = ByteBuffer.allocate(bufferSize);
-        }
+        bufferSize = request.streamPartSize(partsCount + 1);
+        return acquireBuffer();
+    }
 
-        return result;
+    private static boolean isInitialBuffer(ByteBuffer buffer) {
+        return buffer.capacity() < MIN_MULTIPART_UPLOAD;
+    }
+
+    /**
+     * take a full size buffer from the pool, blocking while the buffers held by
+     * all the upload streams exceed the memory budget
+     */
+    private ByteBuffer acquireBuffer() throws IOException {
+        reservation.acquire(bufferSize);
+        return bufferPool.acquire(bufferSize);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (!isInitialBuffer(buffer)) {
+            bufferPool.release(buffer);
+            reservation.release(buffer.capacity());
+        }
     }
 
     private boolean uploadBuffer(ByteBuffer buf, boolean last) throws IOException {
@@ -158,22 +241,38 @@ public final class CosOutputStream extends OutputStream {
             return false;
         }
 
+        if (failure != null) {
+            throw new IOException("Failed to upload multipart data to Tencent Cos", failure);
+        }
+
         if (partsCount == 0) {
             init();
         }
 
         // set the buffer in read mode and submit for upload
-        executor.submit(task(buf, md5.digest(), ++partsCount));
+        final long offset = submittedBytes;
+        submittedBytes += buf.position();
+        executor.execute(task(buf, ++partsCount, offset));
 
         return true;
     }
 
     private void init() throws IOException {
-        uploadId = initiateMultipartUpload().getUploadId();
+        if (request.isCheckpoint()) {
+            checkpoint = CosUploadCheckpoint.load(CosMultipartUploader.checkpointDir(request),
+                    objectId.getBucket(), objectId.getKey(), "", -1, -1, request.streamPartSize(1));
+            uploadId = resumeMultipartUpload();
+        }
         if (uploadId == null) {
-            throw new IOException("Failed to get a valid multipart upload ID from Tencent Cos");
+            uploadId = initiateMultipartUpload().getUploadId();
+            if (uploadId == null) {
+                throw new IOException("Failed to get a valid multipart upload ID from Tencent Cos");
+            }
+            if (checkpoint != null) {
+                checkpoint.start(uploadId);
+            }
         }
-        executor = getOrCreateExecutor(request.getMaxThreads());
+        executor = CosExecutors.getOrCreate("CosStreamUploader", request.getMaxThreads());
         partETags = new LinkedBlockingQueue<>();
         phaser = new Phaser();
         phaser.register();
@@ -182,25 +281,177 @@ public final class CosOutputStream extends OutputStream {
     }
 
 
-    private Runnable task(final ByteBuffer buffer, final byte[] checksum, final int partIndex) {
+    /**
+     * continue the multipart upload recorded by a previous run, the parts whose content
+     * is the same as the one written by this stream are not uploaded again
+     */
+    private String resumeMultipartUpload() throws IOException {
+        final String previous = checkpoint.getUploadId();
+        if (previous == null) {
+            return null;
+        }
+        final Map<Integer, CosUploadCheckpoint.Part> uploaded = CosMultipartUploader.listParts(
+                cosClient, objectId.getBucket(), objectId.getKey(), previous);
+        if (uploaded == null) {
+            log.debug("Multipart upload {} for {} no longer exists -- starting a new one", previous, objectId);
+            return null;
+        }
+        checkpoint.retain(uploaded);
+        log.debug("Resuming multipart upload {} for {} - uploaded parts: {}",
+                previous, objectId, checkpoint.completedCount());
+        return previous;
+    }
+
+    private Runnable task(final ByteBuffer buffer, final int partIndex, final long offset) {
         phaser.register();
         log.trace("[Cos phaser] Task register");
-        return new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    uploadPart(buffer, checksum, partIndex, false);
-                } catch (IOException e) {
-                    final StringWriter writer = new StringWriter();
-                    e.printStackTrace(new PrintWriter(writer));
-                    log.error("Upload: {} > Error for part: {}\nCaused by: {}", uploadId, partIndex, writer.toString());
-                } finally {
-                    log.trace("[Cos phaser] Task arriveAndDeregisterphaser");
-                    phaser.arriveAndDeregister();
+        return new PartTask(buffer, partIndex, offset);
+    }
+
+    /**
+     * PartTask
+     * upload of a part buffer, a failed attempt is scheduled again after an exponential
+     * backoff so the upload threads keep serving the other parts meanwhile
+     */
+    private class PartTask implements Runnable {
+        private final ByteBuffer buffer;
+        private final int partNumber;
+        private final long offset;
+        private long crc;
+        private byte[] checksum;
+        private int attempt;
+
+        PartTask(ByteBuffer buffer, int partNumber, long offset) {
+            this.buffer = buffer;
+            this.partNumber = partNumber;
+            this.offset = offset;
+        }
+
+        @Override
+        public void run() {
+            boolean done = true;
+            try {
+                done = attempt();
+            } catch (RuntimeException e) {
+                fail(partNumber, new IOException("Unexpected error uploading part " + partNumber, e));
+            } finally {
+                if (done) {
+                    finish();
+                }
+            }
+        }
+
+        private void finish() {
+            releaseBuffer(buffer);
+            log.trace("[Cos phaser] Task arriveAndDeregisterphaser");
+            phaser.arriveAndDeregister();
+        }
+
+        /**
+         * @return false when the part has been scheduled for another attempt
+         */
+        private boolean attempt() {
+            if (attempt++ == 0) {
+                ((java.nio.Buffer) buffer).flip();
+                ((java.nio.Buffer) buffer).mark();
+                // the checksums are computed in bulk by the upload thread, not by the writer
+                crc = crc64(buffer);
+                checksum = request.isChecksumMd5() ? md5(buffer) : null;
+                partChecksums.put(partNumber, new PartChecksum(crc, buffer.limit()));
+                if (reusePart(partNumber, crc, offset, buffer.limit())) {
+                    return true;
                 }
             }
-        };
+            if (aborted || failure != null) {
+                return true;
+            }
+
+            final int len = buffer.limit();
+            boolean acquired = false;
+            boolean success = false;
+            try {
+                if (concurrency != null) {
+                    concurrency.acquire();
+                    acquired = true;
+                }
+                log.trace("Uploading part {} with length {} attempt {} for {} ",
+                        partNumber, len, attempt, objectId);
+                final PartETag etag = uploadPart(new ByteBufferInputStream(buffer), len, checksum, crc,
+                        partNumber, false);
+                if (checkpoint != null && etag != null) {
+                    checkpoint.complete(partNumber, new CosUploadCheckpoint.Part(
+                            etag.getETag(), crc, offset, len));
+                }
+                success = true;
+                return true;
+            } catch (InterruptedIOException e) {
+                fail(partNumber, e);
+                return true;
+            } catch (CosClientException | IOException e) {
+                if (attempt >= request.getMaxAttempts()) {
+                    fail(partNumber, new IOException("Failed to upload multipart data to Tencent Cos", e));
+                    return true;
+                }
+                final long delay = request.retryDelay(attempt);
+                log.debug("Failed to upload part {} attempt {} for {} -- retrying in {} ms -- Caused by: {}",
+                        partNumber, attempt, objectId, delay, e.getMessage());
+                buffer.reset();
+                return !retryLater(delay);
+            } finally {
+                if (acquired) {
+                    concurrency.release(success ? len : 0);
+                }
+            }
+        }
 
+        /**
+         * @return true when the attempt has been scheduled
+         */
+        private boolean retryLater(long delay) {
+            try {
+                CosMultipartUploader.getOrCreateRetryScheduler().schedule(() -> {
+                    try {
+                        executor.execute(this);
+                    } catch (RuntimeException e) {
+                        fail(partNumber, new IOException("Cannot retry upload of part " + partNumber, e));
+                        finish();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (RuntimeException e) {
+                fail(partNumber, new IOException("Cannot retry upload of part " + partNumber, e));
+                return false;
+            }
+        }
+    }
+
+    /**
+     * use the part uploaded by a previous run when its content is the same
+     */
+    private boolean reusePart(int partNumber, long crc, long offset, long length) {
+        final CosUploadCheckpoint.Part part = checkpoint != null ? checkpoint.getPart(partNumber) : null;
+        if (part == null || part.getCrc() == null || part.getCrc() != crc
+                || part.getOffset() != offset || part.getLength() != length) {
+            return false;
+        }
+        log.trace("Reusing part {} with length {} for {}: {}", partNumber, length, objectId, part.getEtag());
+        partETags.add(new PartETag(partNumber, part.getEtag()));
+        return true;
+    }
+
+    private synchronized void fail(int partNumber, IOException e) {
+        if (failure != null) {
+            return;
+        }
+        failure = e;
+        final StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        log.error("Upload: {} > Error for part: {}\nCaused by: {}", uploadId, partNumber, writer.toString());
+        if (checkpoint == null) {
+            abortMultipartUpload();
+        } else {
+            log.debug("Keeping multipart upload {} for {} to be resumed", uploadId, objectId);
+        }
     }
 
     @Override
@@ -209,28 +460,76 @@ public final class CosOutputStream extends OutputStream {
             return;
         }
 
-        if (uploadId == null) {
-            if (buf != null) {
-                putObject(buf, md5.digest());
+        try {
+            if (uploadId == null) {
+                if (buf != null) {
+                    try {
+                        putObject(buf);
+                    } finally {
+                        releaseBuffer(buf);
+                        buf = null;
+                    }
+                } else {
+                    // this is needed when trying to upload an empty
+                    putObject(ByteBuffer.allocate(0));
+                }
             } else {
-                // this is needed when trying to upload an empty
-                putObject(new ByteArrayInputStream(new byte[]{}), 0, createMd5().digest());
-            }
-        } else {
-            // -- upload remaining chunk
-            if (buf != null) {
-                uploadBuffer(buf, true);
-            }
+                // -- upload remaining chunk
+                if (buf != null && failure == null) {
+                    uploadBuffer(buf, true);
+                } else if (buf != null) {
+                    releaseBuffer(buf);
+                }
+                buf = null;
 
-            // -- shutdown upload executor and await termination
-            log.trace("[Cos phaser] Close arriveAndAwaitAdvance");
-            phaser.arriveAndAwaitAdvance();
+                // -- shutdown upload executor and await termination
+                log.trace("[Cos phaser] Close arriveAndAwaitAdvance");
+                phaser.arriveAndAwaitAdvance();
+
+                if (failure != null) {
+                    throw new IOException("Failed to upload multipart data to Tencent Cos", failure);
+                }
+
+                // -- complete upload process
+                completeMultipartUpload();
+                if (checkpoint != null) {
+                    checkpoint.delete();
+                }
+            }
+        } finally {
+            closed = true;
+            reservation.close();
+        }
+    }
 
-            // -- complete upload process
-            completeMultipartUpload();
+    /**
+     * abort
+     * discard the content written so far, the parts being uploaded are awaited and the multipart
+     * upload is aborted, so nothing is created at the target
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
         }
 
-        closed = true;
+        try {
+            if (buf != null) {
+                releaseBuffer(buf);
+                buf = null;
+            }
+            if (uploadId != null) {
+                // a part completed after the abort would be kept, wait for the ones in flight
+                log.trace("[Cos phaser] Abort arriveAndAwaitAdvance");
+                phaser.arriveAndAwaitAdvance();
+                abortMultipartUpload();
+                if (checkpoint != null) {
+                    checkpoint.delete();
+                }
+            }
+        } finally {
+            closed = true;
+            reservation.close();
+        }
     }
 
     private InitiateMultipartUploadResult initiateMultipartUpload() throws IOException {
@@ -263,49 +562,12 @@ public final class CosOutputStream extends OutputStream {
         }
     }
 
-    private void uploadPart(final ByteBuffer buf, final byte[] checksum, final int partNumber,
-            final boolean lastPart) throws IOException {
-        ((java.nio.Buffer) buf).flip();
-        ((java.nio.Buffer) buf).mark();
-
-        int attempt = 0;
-        boolean success = false;
-        try {
-            while (!success) {
-                attempt++;
-                int len = buf.limit();
-                try {
-                    log.trace("Uploading part {} with length {} attempt {} for {} ",
-                            partNumber, len, attempt, objectId);
-                    uploadPart(new ByteBufferInputStream(buf), len, checksum, partNumber, lastPart);
-                    success = true;
-                } catch (CosClientException | IOException e) {
-                    if (attempt == request.getMaxAttempts()) {
-                        throw new IOException("Failed to upload multipart data to Tencent Cos", e);
-                    }
-
-                    log.debug("Failed to upload part {} attempt {} for {} -- Caused by: {}",
-                            partNumber, attempt, objectId, e.getMessage());
-                    sleep(request.getRetrySleep());
-                    buf.reset();
-                }
-            }
-        } finally {
-            if (!success) {
-                closed = true;
-                abortMultipartUpload();
-            }
-            bufferPool.offer(buf);
-        }
-
-    }
-
-    private void uploadPart(final InputStream content, final long contentLength,
-            final byte[] checksum, final int partNumber, final boolean lastPart)
+    private PartETag uploadPart(final InputStream content, final long contentLength,
+            final byte[] checksum, final long crc, final int partNumber, final boolean lastPart)
             throws IOException {
 
         if (aborted) {
-            return;
+            return null;
         }
 
         final UploadPartRequest request = new UploadPartRequest();
@@ -316,21 +578,17 @@ public final class CosOutputStream extends OutputStream {
         request.setPartSize(contentLength);
         request.setInputStream(content);
         request.setLastPart(lastPart);
-        request.setMd5Digest(Base64.encodeAsString(checksum));
+        if (checksum != null) {
+            request.setMd5Digest(Base64.encodeAsString(checksum));
+        }
 
-        final PartETag partETag = cosClient.uploadPart(request).getPartETag();
+        final UploadPartResult result = cosClient.uploadPart(request);
+        verifyCrc64(crc, result.getCrc64Ecma(), "part " + partNumber);
+        final PartETag partETag = result.getPartETag();
         log.trace("Uploaded part {} with length {} for {}: {}",
                 partETag.getPartNumber(), contentLength, objectId, partETag.getETag());
         partETags.add(partETag);
-
-    }
-
-    private void sleep(long millis) {
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            log.trace("Sleep was interrupted -- Cause: {}", e.getMessage());
-        }
+        return partETag;
     }
 
     private synchronized void abortMultipartUpload() {
@@ -346,8 +604,6 @@ public final class CosOutputStream extends OutputStream {
             log.warn("Failed to abort multipart upload {}: {}", uploadId, e.getMessage());
         }
         aborted = true;
-        log.trace("[Cos phaser] MultipartUpload arriveAndDeregister");
-        phaser.arriveAndDeregister();
     }
 
     private void completeMultipartUpload() throws IOException {
@@ -359,29 +615,39 @@ public final class CosOutputStream extends OutputStream {
         final int partCount = partETags.size();
         log.trace("Completing upload to {} consisting of {} parts", objectId, partCount);
 
+        final List<PartETag> etags = new ArrayList<>(partETags);
+        etags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+        final CompleteMultipartUploadResult result;
         try {
-            cosClient.completeMultipartUpload(new CompleteMultipartUploadRequest(
-                    objectId.getBucket(), objectId.getKey(), uploadId, new ArrayList<>(partETags)));
+            result = cosClient.completeMultipartUpload(new CompleteMultipartUploadRequest(
+                    objectId.getBucket(), objectId.getKey(), uploadId, etags));
         } catch (final CosClientException e) {
             throw new IOException("Failed to complete Tencent Cos multipart upload", e);
         }
+        verifyCrc64(combinedCrc64(), result.getCrc64Ecma(), "object");
+        uploaded(submittedBytes, result.getETag());
 
-        log.trace("Completed upload to {} consisting of {} parts", objectId, partCount);
+        log.trace("Completed upload to {} consisting of {} parts -- memory budget: {}", objectId, partCount, budget);
 
         uploadId = null;
         partETags = null;
     }
 
-    private void putObject(ByteBuffer buf, byte[] checksum) throws IOException {
+    private void putObject(ByteBuffer buf) throws IOException {
         ((java.nio.Buffer) buf).flip();
-        putObject(new ByteBufferInputStream(buf), buf.limit(), checksum);
+        final long crc = crc64(buf);
+        final byte[] checksum = request.isChecksumMd5() ? md5(buf) : null;
+        putObject(new ByteBufferInputStream(buf), buf.limit(), checksum, crc);
     }
 
-    private void putObject(final InputStream content, final long contentLength, byte[] checksum) throws IOException {
+    private void putObject(final InputStream content, final long contentLength, byte[] checksum, long crc)
+            throws IOException {
 
         final ObjectMetadata meta = new ObjectMetadata();
         meta.setContentLength(contentLength);
-        meta.setContentMD5(Base64.encodeAsString(checksum));
+        if (checksum != null) {
+            meta.setContentMD5(Base64.encodeAsString(checksum));
+        }
 
         final PutObjectRequest request = new PutObjectRequest(objectId.getBucket(), objectId.getKey(), content, meta);
 
@@ -401,19 +667,86 @@ public final class CosOutputStream extends OutputStream {
             log.trace("Cos putObject {}", request);
         }
 
+        final PutObjectResult result;
         try {
-            cosClient.putObject(request);
+            result = cosClient.putObject(request);
         } catch (final CosClientException e) {
             throw new IOException("Failed to put data into Tencent Cos object", e);
         }
+        verifyCrc64(crc, result.getCrc64Ecma(), "object");
+        uploaded(contentLength, result.getETag());
+    }
+
+    private static long crc64(ByteBuffer buf) {
+        final Crc64 crc = new Crc64();
+        crc.update(buf);
+        return crc.getValue();
+    }
+
+    private byte[] md5(ByteBuffer buf) {
+        final MessageDigest digest = createMd5();
+        digest.update(buf.duplicate());
+        return digest.digest();
+    }
+
+    private long combinedCrc64() {
+        long result = 0;
+        for (PartChecksum it : partChecksums.values()) {
+            result = Crc64.combine(result, it.crc, it.length);
+        }
+        return result;
+    }
+
+    /**
+     * compare the crc64 computed locally with the one returned by tencent cos,
+     * the check is skipped when the server does not return it
+     */
+    private void verifyCrc64(long expected, String serverValue, String what) throws IOException {
+        final Long actual = Crc64.parse(serverValue);
+        if (actual == null) {
+            log.trace("Missing crc64 for {} of {}", what, objectId);
+            return;
+        }
+        if (actual != expected) {
+            throw new IOException(String.format("Checksum mismatch for %s of %s - expected crc64: %s; found: %s",
+                    what, objectId, Crc64.toString(expected), Crc64.toString(actual)));
+        }
+    }
+
+    private static class PartChecksum {
+        final long crc;
+        final long length;
+
+        PartChecksum(long crc, long length) {
+            this.crc = crc;
+            this.length = length;
+        }
+    }
+
+    private static volatile UploadMemoryBudget budgetSingleton;
+
+    private static volatile ByteBufferPool poolSingleton;
+
+    /**
+     * the budget of the part buffers in use, created along with the pool of the idle ones,
+     * the two share the upload memory so that together they never hold more than max bytes
+     */
+    static synchronized UploadMemoryBudget getOrCreateBudget(long maxBytes) {
+        if (budgetSingleton == null) {
+            final long pooled = Math.min(MAX_POOLED_BYTES, maxBytes / 4);
+            poolSingleton = new ByteBufferPool(pooled);
+            budgetSingleton = new UploadMemoryBudget(maxBytes - pooled);
+        }
+        return budgetSingleton;
     }
 
-    private static volatile ExecutorService executorSingleton;
+    private static volatile AdaptiveConcurrency concurrencySingleton;
 
-    static synchronized ExecutorService getOrCreateExecutor(int maxThreads) {
-        if (executorSingleton == null) {
-            executorSingleton = ThreadPoolManager.create("CosStreamUploader", maxThreads);
+    static synchronized AdaptiveConcurrency getOrCreateConcurrency(int maxThreads) {
+        if (concurrencySingleton == null) {
+            concurrencySingleton = new AdaptiveConcurrency(
+                    CosMultipartOptions.DEFAULT_ADAPTIVE_INITIAL_THREADS, maxThreads);
         }
-        return executorSingleton;
+        return concurrencySingleton;
     }
 }
@@ -0,0 +1,310 @@
+package nextflow.tencentcloud.nio;
+
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.model.COSObjectInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import nextflow.tencentcloud.nio.util.CosBlockCache;
+import nextflow.tencentcloud.nio.util.CosDownloadOptions;
+import nextflow.tencentcloud.nio.util.CosExecutors;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosParallelInputStream
+ * sequential input stream that keeps a window of concurrent range requests
+ * ahead of the reader, the downloaded parts are kept in a bounded ring of buffers
+ */
+public class CosParallelInputStream extends InputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(CosParallelInputStream.class);
+
+    private final CosClient client;
+    private final String bucket;
+    private final String key;
+    private final long size;
+    private final int partSize;
+    private final int windowSize;
+    private final CosDownloadOptions opts;
+    private final ExecutorService executor;
+    private final CosBlockCache cache;
+    private final String etag;
+
+    // parts submitted for download, in object order
+    private final Deque<Future<byte[]>> inflight = new ArrayDeque<>();
+    // buffers consumed by the reader, ready to be reused for the next parts
+    private final Deque<byte[]> freeBuffers = new ArrayDeque<>();
+    private final long partsCount;
+    private long nextPart;
+
+    // the stream of the initial request, it serves the first part
+    private InputStream head;
+    private long headRemaining;
+
+    private byte[] current;
+    private int currentPos;
+    private int currentLimit;
+    private long position;
+    private volatile boolean closed;
+    // the buffer of the single byte reads
+    private final byte[] single = new byte[1];
+    // the range requests being read, aborted when the stream is closed
+    private final Set<COSObjectInputStream> ranges = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param client cos client
+     * @param bucket bucket name
+     * @param key object key
+     * @param size object size
+     * @param head content stream of a request started at offset zero
+     * @param opts download options
+     */
+    public CosParallelInputStream(CosClient client, String bucket, String key, long size,
+            InputStream head, CosDownloadOptions opts) {
+        this(client, bucket, key, size, head, opts, null, null);
+    }
+
+    /**
+     * @param client cos client
+     * @param bucket bucket name
+     * @param key object key
+     * @param size object size
+     * @param head content stream of a request started at offset zero, or null to fetch the first part too
+     * @param opts download options
+     * @param cache block cache serving the parts, the part size is the cache block size
+     * @param etag object etag, required by the block cache
+     */
+    public CosParallelInputStream(CosClient client, String bucket, String key, long size,
+            InputStream head, CosDownloadOptions opts, CosBlockCache cache, String etag) {
+        this.client = client;
+        this.bucket = bucket;
+        this.key = key;
+        this.size = size;
+        this.opts = opts;
+        this.cache = cache;
+        this.etag = etag;
+        this.partSize = cache != null ? cache.getBlockSize() : opts.getPartSize();
+        this.windowSize = Math.max(1, opts.getWindowSize());
+        this.executor = CosExecutors.getOrCreate("CosStreamDownloader", opts.getMaxThreads());
+        this.partsCount = (size + partSize - 1) / partSize;
+        this.head = head;
+        this.headRemaining = head != null ? Math.min(partSize, size) : 0;
+        this.nextPart = head != null ? 1 : 0;
+        log.trace("Parallel read of cos://{}/{} size: {}; parts: {}; window: {}",
+                bucket, key, size, partsCount, windowSize);
+        fillWindow();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Can't read from a closed stream");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= size) {
+            return -1;
+        }
+        if (head != null) {
+            final int n = readHead(b, off, len);
+            if (n > 0) {
+                return n;
+            }
+        }
+        if (current == null || currentPos >= currentLimit) {
+            nextBuffer();
+        }
+
+        final int n = Math.min(len, currentLimit - currentPos);
+        System.arraycopy(current, currentPos, b, off, n);
+        currentPos += n;
+        position += n;
+        return n;
+    }
+
+    private int readHead(byte[] b, int off, int len) throws IOException {
+        final int n = head.read(b, off, (int) Math.min(len, headRemaining));
+        if (n < 0) {
+            // the first request ended too early, fetch what is left of the part
+            final int remaining = (int) headRemaining;
+            log.debug("Unexpected end of stream reading cos://{}/{} at {} -- fetching the remaining {} bytes",
+                    bucket, key, position, remaining);
+            closeHead();
+            final byte[] buf = buffer(remaining);
+            fetchRemote(position, buf, remaining);
+            current = buf;
+            currentPos = 0;
+            currentLimit = remaining;
+            return 0;
+        }
+        headRemaining -= n;
+        position += n;
+        if (headRemaining == 0) {
+            closeHead();
+        }
+        return n;
+    }
+
+    private void closeHead() {
+        try {
+            // drop the connection instead of draining the rest of the object
+            if (head instanceof COSObjectInputStream && position < size) {
+                ((COSObjectInputStream) head).abort();
+            }
+            head.close();
+        } catch (IOException e) {
+            log.trace("Error while closing stream for cos://{}/{} -- Cause: {}", bucket, key, e.getMessage());
+        }
+        head = null;
+    }
+
+    private void nextBuffer() throws IOException {
+        if (current != null) {
+            freeBuffers.offer(current);
+            current = null;
+        }
+
+        final Future<byte[]> future = inflight.poll();
+        if (future == null) {
+            throw new IllegalStateException("Missing part for cos://" + bucket + "/" + key + " at " + position);
+        }
+        try {
+            current = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading cos://" + bucket + "/" + key);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException("Cannot read cos://" + bucket + "/" + key, cause);
+        }
+        currentPos = 0;
+        currentLimit = (int) Math.min(partSize, size - position);
+        fillWindow();
+    }
+
+    private void fillWindow() {
+        while (inflight.size() < windowSize && nextPart < partsCount) {
+            final long start = nextPart * partSize;
+            final int len = (int) Math.min(partSize, size - start);
+            final byte[] buf = buffer(len);
+            inflight.add(executor.submit(() -> fetch(start, buf, len)));
+            nextPart++;
+        }
+    }
+
+    /**
+     * a buffer for a part of the given length, a part is never larger than what is left of
+     * the object so a small object does not take a whole part size
+     */
+    private byte[] buffer(int len) {
+        final byte[] result = freeBuffers.poll();
+        return result != null && result.length >= len ? result : new byte[len];
+    }
+
+    private byte[] fetch(long start, byte[] buf, int len) throws IOException {
+        if (cache != null) {
+            cache.read(bucket, key, etag, start / partSize, buf, len, (b, n) -> fetchRemote(start, b, n));
+            return buf;
+        }
+        return fetchRemote(start, buf, len);
+    }
+
+    private byte[] fetchRemote(long start, byte[] buf, int len) throws IOException {
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            try {
+                readRange(start, buf, len);
+                return buf;
+            } catch (CosClientException | IOException e) {
+                if (closed) {
+                    throw new IOException("Stream closed", e);
+                }
+                if (attempt >= opts.getMaxAttempts()) {
+                    throw new IOException(String.format("Failed to read range %d-%d of cos://%s/%s",
+                            start, start + len - 1, bucket, key), e);
+                }
+                log.debug("Failed to read range {}-{} attempt {} of cos://{}/{} -- Caused by: {}",
+                        start, start + len - 1, attempt, bucket, key, e.getMessage());
+                sleep(opts.getRetrySleep() * attempt);
+            }
+        }
+    }
+
+    private void readRange(long start, byte[] buf, int len) throws IOException {
+        try (COSObjectInputStream stream = client.getObjectRange(bucket, key, start, start + len - 1)) {
+            ranges.add(stream);
+            try {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                IOUtils.readFully(stream, buf, 0, len);
+            } catch (IOException | RuntimeException e) {
+                // drop the connection instead of draining the rest of the range
+                stream.abort();
+                throw e;
+            } finally {
+                ranges.remove(stream);
+            }
+        }
+    }
+
+    private void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading cos://" + bucket + "/" + key);
+        }
+    }
+
+    @Override
+    public int available() {
+        if (head != null) {
+            return 0;
+        }
+        return current != null ? currentLimit - currentPos : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (head != null) {
+            closeHead();
+        }
+        for (Future<byte[]> it : inflight) {
+            it.cancel(false);
+        }
+        // the range requests being read hold a connection and a part buffer each, they are aborted
+        // rather than interrupted, which would also close the files of the block cache being written
+        for (COSObjectInputStream it : ranges) {
+            it.abort();
+        }
+        inflight.clear();
+        freeBuffers.clear();
+        current = null;
+    }
+}
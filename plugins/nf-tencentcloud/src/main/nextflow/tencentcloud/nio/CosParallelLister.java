@@ -0,0 +1,445 @@
+package nextflow.tencentcloud.nio;
+
+import com.qcloud.cos.model.COSObjectSummary;
+import com.qcloud.cos.model.ListObjectsRequest;
+import com.qcloud.cos.model.ObjectListing;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import nextflow.tencentcloud.nio.util.CosExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosParallelLister
+ * list a prefix splitting the key space into ranges listed concurrently. a range lists a single
+ * page and, when there is more, hands the rest over to sub ranges split on the first character
+ * where the last listed key and the range end differ, or to a single range following the page.
+ * the ranges are consumed in key order, so the entries come out sorted as with a sequential
+ * listing. the ranges are only started when there are less than a bounded number of ranges
+ * listed ahead of the consumer, the lowest first, so that the memory held is bounded too
+ */
+public class CosParallelLister {
+
+    private static final Logger log = LoggerFactory.getLogger(CosParallelLister.class);
+
+    /**
+     * characters used to split a range, in ascending order. the keys starting with any other
+     * character still belong to one of the ranges
+     */
+    private static final String ALPHABET = "-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * max number of ranges of a listing for each concurrent request
+     */
+    private static final int RANGES_PER_THREAD = 16;
+
+    /**
+     * max number of ranges started and not consumed yet for each concurrent request
+     */
+    private static final int AHEAD_PER_THREAD = 2;
+
+    private final CosClient client;
+    private final String bucket;
+    private final String prefix;
+    private final String delimiter;
+    private final ExecutorService executor;
+    private final AtomicInteger rangesLeft;
+    private final int maxAhead;
+
+    // the ranges not started yet, the lowest is started first. guarded by itself
+    private final TreeSet<Range> pending = new TreeSet<>(CosParallelLister::compareRanges);
+    // the ranges started and not consumed yet, guarded by pending
+    private int ahead;
+    private volatile boolean closed;
+
+    /**
+     * @param client cos client
+     * @param bucket bucket name
+     * @param prefix listed prefix
+     * @param delimiter listing delimiter, or null to list all the keys under the prefix
+     * @param parallelism number of concurrent list requests
+     */
+    public CosParallelLister(CosClient client, String bucket, String prefix, String delimiter, int parallelism) {
+        this.client = client;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.delimiter = delimiter;
+        this.executor = CosExecutors.getOrCreate("CosParallelLister", parallelism);
+        this.rangesLeft = new AtomicInteger(parallelism * RANGES_PER_THREAD);
+        this.maxAhead = Math.max(1, parallelism * AHEAD_PER_THREAD);
+    }
+
+    /**
+     * iterator
+     * the entries of the listing in key order
+     *
+     * @param marker list the keys after this one, or null to list from the prefix start
+     * @return the entries iterator
+     */
+    public Iterator<Entry> iterator(String marker) {
+        final Range root = new Range(marker, null);
+        enqueue(Collections.singletonList(root));
+        return new EntryIterator(root);
+    }
+
+    /**
+     * close
+     * stop listing, the ranges not started are dropped and the running ones complete
+     * without listing further
+     */
+    public void close() {
+        closed = true;
+        synchronized (pending) {
+            for (Range it : pending) {
+                it.result.cancel(false);
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * listAll
+     * the summaries of all the objects under the prefix, in key order
+     */
+    public List<COSObjectSummary> listAll() {
+        final List<COSObjectSummary> result = new ArrayList<>();
+        final Iterator<Entry> it = iterator(null);
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.getSummary() != null) {
+                result.add(entry.getSummary());
+            }
+        }
+        return result;
+    }
+
+    private void enqueue(List<Range> ranges) {
+        synchronized (pending) {
+            if (closed) {
+                ranges.forEach(it -> it.result.cancel(false));
+                return;
+            }
+            pending.addAll(ranges);
+        }
+        startPending();
+    }
+
+    /**
+     * a range is consumed, the next one can be started
+     */
+    private void consumed() {
+        synchronized (pending) {
+            ahead--;
+        }
+        startPending();
+    }
+
+    /**
+     * start the lowest pending ranges while there are less than the max ranges ahead. the range
+     * the consumer waits for is always the lowest not consumed, so it is always started
+     */
+    private void startPending() {
+        while (true) {
+            final Range range;
+            synchronized (pending) {
+                if (closed || ahead >= maxAhead || pending.isEmpty()) {
+                    return;
+                }
+                range = pending.pollFirst();
+                ahead++;
+            }
+            try {
+                executor.execute(range);
+            } catch (RuntimeException e) {
+                range.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static int compareRanges(Range a, Range b) {
+        if (a.lo == null || b.lo == null) {
+            return a.lo == null ? (b.lo == null ? 0 : -1) : 1;
+        }
+        return a.lo.compareTo(b.lo);
+    }
+
+    /**
+     * Entry
+     * an object of the listing, or a common prefix when the summary is null
+     */
+    public static class Entry {
+        private final String key;
+        private final COSObjectSummary summary;
+
+        Entry(String key, COSObjectSummary summary) {
+            this.key = key;
+            this.summary = summary;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public COSObjectSummary getSummary() {
+            return summary;
+        }
+
+        public boolean isPrefix() {
+            return summary == null;
+        }
+    }
+
+    /**
+     * Range
+     * the keys after lo up to hi included, the result holds the entries of the range and
+     * the sub ranges the rest of the range has been split into, in key order
+     */
+    private class Range implements Runnable {
+        final CompletableFuture<List<Object>> result = new CompletableFuture<>();
+        final String lo;
+        final String hi;
+
+        Range(String lo, String hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public void run() {
+            if (closed) {
+                result.cancel(false);
+                return;
+            }
+            try {
+                final List<Object> items = new ArrayList<>();
+                final ObjectListing listing = client.listObjects(request(lo));
+                final boolean bounded = addEntries(listing, items);
+                List<Range> ranges = null;
+                if (!bounded && listing.isTruncated()) {
+                    final String marker = lastKey(listing);
+                    // when the page ended on the range end, the keys after it belong to the next range
+                    if (hi == null || marker.compareTo(hi) < 0) {
+                        ranges = split(marker, hi);
+                        if (ranges == null) {
+                            ranges = Collections.singletonList(new Range(marker, hi));
+                        }
+                        items.addAll(ranges);
+                    }
+                }
+                result.complete(items);
+                if (ranges != null) {
+                    enqueue(ranges);
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * add the entries of the listing within the range, sorted
+         *
+         * @return true when the listing went beyond the range end
+         */
+        private boolean addEntries(ObjectListing listing, List<Object> items) {
+            final List<Entry> entries = new ArrayList<>();
+            for (COSObjectSummary it : listing.getObjectSummaries()) {
+                entries.add(new Entry(it.getKey(), it));
+            }
+            for (String it : listing.getCommonPrefixes()) {
+                entries.add(new Entry(it, null));
+            }
+            entries.sort((a, b) -> a.key.compareTo(b.key));
+
+            for (Entry it : entries) {
+                if (lo != null && it.key.compareTo(lo) <= 0) {
+                    continue;
+                }
+                if (hi != null && it.key.compareTo(hi) > 0) {
+                    return true;
+                }
+                items.add(it);
+            }
+            return false;
+        }
+    }
+
+    private ListObjectsRequest request(String marker) {
+        final ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(bucket);
+        request.setPrefix(prefix);
+        request.setMaxKeys(PAGE_SIZE);
+        if (delimiter != null) {
+            request.setDelimiter(delimiter);
+        }
+        if (marker != null) {
+            request.setMarker(marker);
+        }
+        return request;
+    }
+
+    private static String lastKey(ObjectListing listing) {
+        if (listing.getNextMarker() != null) {
+            return listing.getNextMarker();
+        }
+        String result = null;
+        final List<COSObjectSummary> objects = listing.getObjectSummaries();
+        if (!objects.isEmpty()) {
+            result = objects.get(objects.size() - 1).getKey();
+        }
+        final List<String> prefixes = listing.getCommonPrefixes();
+        if (!prefixes.isEmpty()) {
+            final String last = prefixes.get(prefixes.size() - 1);
+            result = result == null || last.compareTo(result) > 0 ? last : result;
+        }
+        return result;
+    }
+
+    /**
+     * split the keys after last up to hi on the first character position where they can differ
+     *
+     * @return the sub ranges, or null when the range is not worth splitting
+     */
+    private List<Range> split(String last, String hi) {
+        if (last == null || !last.startsWith(prefix) || hi != null && last.compareTo(hi) >= 0) {
+            return null;
+        }
+        // find the first position with split characters between the last key and the range end
+        String stem = hi != null ? commonPrefix(last, hi) : prefix;
+        if (stem.length() < prefix.length()) {
+            return null;
+        }
+        boolean bounded = hi != null;
+        List<Character> candidates;
+        while (true) {
+            final int d = stem.length();
+            final char low = d < last.length() ? last.charAt(d) : 0;
+            final char high = bounded && d < hi.length() ? hi.charAt(d) : Character.MAX_VALUE;
+            candidates = new ArrayList<>();
+            for (int i = 0; i < ALPHABET.length(); i++) {
+                final char c = ALPHABET.charAt(i);
+                if (c > low && c < high) {
+                    candidates.add(c);
+                }
+            }
+            if (!candidates.isEmpty() || d >= last.length()) {
+                break;
+            }
+            // do not split within a common prefix of a delimited listing
+            if (delimiter != null && delimiter.charAt(0) == low) {
+                return null;
+            }
+            stem = stem + low;
+            bounded = bounded && hi.startsWith(stem) && hi.length() > stem.length();
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        final int count = reserveRanges(candidates.size());
+        if (count == 0) {
+            return null;
+        }
+        final List<Range> result = new ArrayList<>(count + 1);
+        String from = last;
+        for (int i = 0; i < count; i++) {
+            // evenly spread the boundaries when the candidates exceed the ranges left
+            final String to = stem + candidates.get((int) ((long) i * candidates.size() / count));
+            result.add(new Range(from, to));
+            from = to;
+        }
+        result.add(new Range(from, hi));
+        log.trace("Cos listing cos://{}/{} split after {} into {} ranges", bucket, prefix, last, result.size());
+        return result;
+    }
+
+    private int reserveRanges(int count) {
+        while (true) {
+            final int left = rangesLeft.get();
+            final int result = Math.min(left, count);
+            if (result <= 0) {
+                return 0;
+            }
+            if (rangesLeft.compareAndSet(left, left - result)) {
+                return result;
+            }
+        }
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return a.substring(0, i);
+    }
+
+    /**
+     * EntryIterator
+     * walk the ranges depth first, waiting for each range to be listed
+     */
+    private class EntryIterator implements Iterator<Entry> {
+        private final Deque<Iterator<Object>> stack = new ArrayDeque<>();
+        private Entry next;
+
+        EntryIterator(Range root) {
+            stack.push(Collections.<Object>singletonList(root).iterator());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            while (!stack.isEmpty()) {
+                final Iterator<Object> top = stack.peek();
+                if (!top.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                final Object item = top.next();
+                if (item instanceof Range) {
+                    stack.push(await((Range) item).iterator());
+                } else {
+                    next = (Entry) item;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry result = next;
+            next = null;
+            return result;
+        }
+
+        private List<Object> await(Range range) {
+            try {
+                final List<Object> result = range.result.join();
+                consumed();
+                return result;
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
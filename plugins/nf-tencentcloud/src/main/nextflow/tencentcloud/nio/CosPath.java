@@ -474,6 +474,13 @@ public class CosPath implements Path, TagAwareFile {
         return result;
     }
 
+    /**
+     * whether the path holds the summary fetched by a listing, without consuming it
+     */
+    public boolean hasObjectSummary() {
+        return objectSummary != null;
+    }
+
     void setObjectSummary(COSObjectSummary objectSummary) {
         this.objectSummary = objectSummary;
     }
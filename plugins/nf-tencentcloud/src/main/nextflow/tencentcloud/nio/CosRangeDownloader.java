@@ -0,0 +1,183 @@
+package nextflow.tencentcloud.nio;
+
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.model.COSObjectInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import nextflow.tencentcloud.nio.util.CosDownloadCheckpoint;
+import nextflow.tencentcloud.nio.util.CosDownloadOptions;
+import nextflow.tencentcloud.nio.util.CosExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosRangeDownloader
+ * download an object into a local file splitting it into ranges fetched concurrently,
+ * each range is written at its offset of the preallocated target file
+ */
+public class CosRangeDownloader {
+
+    private static final Logger log = LoggerFactory.getLogger(CosRangeDownloader.class);
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    static final String DATA_SUFFIX = ".cosdownload";
+
+    static final String CHECKPOINT_SUFFIX = ".cosdownload.ckpt";
+
+    private final CosClient client;
+    private final CosDownloadOptions opts;
+    private final ExecutorService executor;
+
+    public CosRangeDownloader(CosClient client, CosDownloadOptions opts) {
+        this.client = client;
+        this.opts = opts;
+        this.executor = CosExecutors.getOrCreate("CosRangeDownloader", opts.getMaxThreads());
+    }
+
+    /**
+     * download
+     * download the object into the target file
+     *
+     * @param bucket bucket name
+     * @param key object key
+     * @param size object size
+     * @param target local target file
+     * @throws IOException if any range cannot be downloaded
+     */
+    public void download(String bucket, String key, long size, File target) throws IOException {
+        final long partSize = opts.getPartSize();
+        final long partsCount = (size + partSize - 1) / partSize;
+        log.debug("Cos download cos://{}/{} size: {}; parts: {}", bucket, key, size, partsCount);
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(size);
+        }
+
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (long i = 0; i < partsCount; i++) {
+                final long start = i * partSize;
+                final long end = Math.min(start + partSize, size) - 1;
+                futures.add(executor.submit(() -> {
+                    downloadRange(bucket, key, start, end, channel);
+                    return null;
+                }));
+            }
+            CosExecutors.awaitAll(futures, "download", "cos://" + bucket + "/" + key);
+        }
+    }
+
+    /**
+     * downloadResumable
+     * download the object into the target file recording the completed ranges in a
+     * checkpoint file, a retried download of the same object version only fetches the
+     * missing ranges. the data is written to a sidecar file renamed to the target once complete
+     *
+     * @param bucket bucket name
+     * @param key object key
+     * @param size object size
+     * @param etag object etag
+     * @param target local target file
+     * @throws IOException if any range cannot be downloaded
+     */
+    public void downloadResumable(String bucket, String key, long size, String etag, File target)
+            throws IOException {
+        final long partSize = opts.getPartSize();
+        final long partsCount = (size + partSize - 1) / partSize;
+        final Path data = target.toPath().resolveSibling(target.getName() + DATA_SUFFIX);
+        final Path checkpointFile = target.toPath().resolveSibling(target.getName() + CHECKPOINT_SUFFIX);
+        final CosDownloadCheckpoint checkpoint = CosDownloadCheckpoint.load(checkpointFile, etag, size, partSize);
+
+        if (!Files.exists(data) || Files.size(data) != size) {
+            checkpoint.reset();
+        }
+        if (checkpoint.isEmpty()) {
+            try (RandomAccessFile file = new RandomAccessFile(data.toFile(), "rw")) {
+                file.setLength(size);
+            }
+        }
+        log.debug("Cos download cos://{}/{} size: {}; parts: {}; completed: {}",
+                bucket, key, size, partsCount, checkpoint.completedCount());
+
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (long i = 0; i < partsCount; i++) {
+                if (checkpoint.isCompleted(i)) {
+                    continue;
+                }
+                final long part = i;
+                final long start = i * partSize;
+                final long end = Math.min(start + partSize, size) - 1;
+                futures.add(executor.submit(() -> {
+                    downloadRange(bucket, key, start, end, channel);
+                    // the range must be on disk before it is recorded as completed
+                    channel.force(false);
+                    checkpoint.complete(part);
+                    return null;
+                }));
+            }
+            CosExecutors.awaitAll(futures, "download", "cos://" + bucket + "/" + key);
+        }
+
+        Files.move(data, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        checkpoint.delete();
+    }
+
+    /**
+     * download the bytes [start, end] retrying from the last written byte on failure
+     */
+    void downloadRange(String bucket, String key, long start, long end, FileChannel channel)
+            throws IOException {
+        long position = start;
+        int attempt = 0;
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        while (position <= end) {
+            attempt++;
+            try (COSObjectInputStream stream = client.getObjectRange(bucket, key, position, end)) {
+                while (position <= end) {
+                    final int n = stream.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1));
+                    if (n == -1) {
+                        throw new IOException("Unexpected end of stream at " + position);
+                    }
+                    final ByteBuffer src = ByteBuffer.wrap(buffer, 0, n);
+                    while (src.hasRemaining()) {
+                        position += channel.write(src, position);
+                    }
+                }
+            } catch (CosClientException | IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Download interrupted for cos://" + bucket + "/" + key);
+                }
+                if (attempt >= opts.getMaxAttempts()) {
+                    throw new IOException(String.format("Failed to download range %d-%d of cos://%s/%s",
+                            start, end, bucket, key), e);
+                }
+                log.debug("Failed to download range {}-{} attempt {} of cos://{}/{} -- Caused by: {}",
+                        position, end, attempt, bucket, key, e.getMessage());
+                sleep(opts.getRetrySleep() * attempt);
+            }
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted");
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package nextflow.tencentcloud.nio;
+
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.model.COSObjectInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import nextflow.tencentcloud.nio.util.CosBlockCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosReadChannel
+ * read only seekable channel backed by http range requests, only the bytes
+ * touched by the reader are downloaded from tencent cos
+ */
+public class CosReadChannel implements SeekableByteChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(CosReadChannel.class);
+
+    /**
+     * forward seeks shorter than this are served by skipping the open stream
+     * instead of issuing a new range request
+     */
+    private static final long MAX_SKIP_SIZE = 1 << 20;
+
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    private final CosClient client;
+    private final String bucket;
+    private final String key;
+    private final long size;
+    private final CosBlockCache cache;
+    private final String etag;
+
+    private long position;
+    private COSObjectInputStream stream;
+    // object offset of the next byte returned by the current stream
+    private long streamPosition;
+    private volatile boolean open = true;
+
+    // last block read through the block cache
+    private byte[] block;
+    private long blockIndex = -1;
+    private int blockLength;
+
+    public CosReadChannel(CosClient client, String bucket, String key, long size) {
+        this(client, bucket, key, size, null, null);
+    }
+
+    /**
+     * @param client cos client
+     * @param bucket bucket name
+     * @param key object key
+     * @param size object size
+     * @param cache when not null the reads are served block by block through the local cache
+     * @param etag object etag, required by the block cache
+     */
+    public CosReadChannel(CosClient client, String bucket, String key, long size,
+            CosBlockCache cache, String etag) {
+        this.client = client;
+        this.bucket = bucket;
+        this.key = key;
+        this.size = size;
+        this.cache = cache;
+        this.etag = etag;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+
+        if (cache != null) {
+            return readCached(dst);
+        }
+
+        final int len = (int) Math.min(dst.remaining(), size - position);
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            try {
+                prepareStream();
+                final int n = readStream(dst, len);
+                if (n > 0) {
+                    position += n;
+                    streamPosition += n;
+                    return n;
+                }
+                // the server closed the range before its end, re-open it
+                closeStream(false);
+                if (attempt >= MAX_READ_ATTEMPTS) {
+                    throw new EOFException(String.format(
+                            "Unexpected end of stream at position %d of cos://%s/%s", position, bucket, key));
+                }
+            } catch (CosClientException | IOException e) {
+                closeStream(true);
+                if (attempt >= MAX_READ_ATTEMPTS || e instanceof EOFException) {
+                    throw e instanceof IOException ? (IOException) e
+                            : new IOException(String.format("Cannot read cos://%s/%s", bucket, key), e);
+                }
+                log.debug("Failed to read cos://{}/{} at position {} attempt {} -- Caused by: {}",
+                        bucket, key, position, attempt, e.getMessage());
+            }
+        }
+    }
+
+    private int readCached(ByteBuffer dst) throws IOException {
+        final int blockSize = cache.getBlockSize();
+        final long index = position / blockSize;
+        if (index != blockIndex) {
+            final long start = index * blockSize;
+            final int len = (int) Math.min(blockSize, size - start);
+            if (block == null || block.length < len) {
+                // the last block of an object, or a small object, takes only its own length
+                block = new byte[len];
+            }
+            // invalidate the block while it is being replaced
+            blockIndex = -1;
+            try {
+                cache.read(bucket, key, etag, index, block, len,
+                        (buf, n) -> client.readRange(bucket, key, start, buf, 0, n));
+            } catch (CosClientException e) {
+                throw new IOException(String.format("Cannot read cos://%s/%s", bucket, key), e);
+            }
+            blockIndex = index;
+            blockLength = len;
+        }
+
+        final int off = (int) (position - blockIndex * blockSize);
+        final int n = Math.min(dst.remaining(), blockLength - off);
+        dst.put(block, off, n);
+        position += n;
+        return n;
+    }
+
+    private int readStream(ByteBuffer dst, int len) throws IOException {
+        if (dst.hasArray()) {
+            final int n = stream.read(dst.array(), dst.arrayOffset() + dst.position(), len);
+            if (n > 0) {
+                ((java.nio.Buffer) dst).position(dst.position() + n);
+            }
+            return n;
+        }
+
+        final byte[] tmp = new byte[Math.min(len, 64 * 1024)];
+        final int n = stream.read(tmp, 0, tmp.length);
+        if (n > 0) {
+            dst.put(tmp, 0, n);
+        }
+        return n;
+    }
+
+    /**
+     * make sure the current stream is positioned at the channel position,
+     * re-opening the range request when the reader moved too far away
+     */
+    private void prepareStream() throws IOException {
+        if (stream != null && streamPosition != position) {
+            final long gap = position - streamPosition;
+            if (gap > 0 && gap <= MAX_SKIP_SIZE) {
+                skipStream(gap);
+            } else {
+                closeStream(true);
+            }
+        }
+
+        if (stream == null) {
+            log.trace("Opening range {}-{} for cos://{}/{}", position, size - 1, bucket, key);
+            stream = client.getObjectRange(bucket, key, position, size - 1);
+            streamPosition = position;
+        }
+    }
+
+    private void skipStream(long gap) throws IOException {
+        long remaining = gap;
+        while (remaining > 0) {
+            final long n = stream.skip(remaining);
+            if (n <= 0) {
+                // cannot skip any further, fall back to a new range request
+                closeStream(true);
+                return;
+            }
+            remaining -= n;
+            streamPosition += n;
+        }
+    }
+
+    private void closeStream(boolean abort) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            // abort drops the connection instead of draining the rest of the range
+            if (abort && streamPosition < size) {
+                stream.abort();
+            }
+            stream.close();
+        } catch (IOException e) {
+            log.trace("Error while closing range stream for cos://{}/{} -- Cause: {}", bucket, key, e.getMessage());
+        }
+        stream = null;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must be non-negative: " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        closeStream(true);
+        block = null;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package nextflow.tencentcloud.nio;
+
+import com.qcloud.cos.exception.CosClientException;
+import com.qcloud.cos.model.COSObjectSummary;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import nextflow.tencentcloud.nio.util.CosAttributesCache;
+
+/**
+ * CosTreeWalker
+ * walk a directory tree with a single listing of its prefix without delimiter. the keys come
+ * sorted, so the content of each directory is contiguous and the directories are entered and
+ * left while the keys are consumed, their attributes are made up in memory. the visit follows
+ * the rules of {@link java.nio.file.Files#walkFileTree}, the entries of a directory are visited
+ * in key order
+ */
+public class CosTreeWalker {
+
+    private final CosFileSystemProvider provider;
+    private final int maxDepth;
+    private final FileVisitor<? super Path> visitor;
+
+    // the directories being visited, from the start directory to the current one
+    private final Deque<Dir> stack = new ArrayDeque<>();
+    private boolean terminated;
+
+    /**
+     * Dir
+     * a directory being visited, its remaining entries are ignored when skip is set
+     */
+    private static class Dir {
+        final CosPath path;
+        final String key;
+        boolean skip;
+        boolean postVisit;
+
+        Dir(CosPath path, String key, boolean skip, boolean postVisit) {
+            this.path = path;
+            this.key = key;
+            this.skip = skip;
+            this.postVisit = postVisit;
+        }
+    }
+
+    /**
+     * @param provider cos file system provider
+     * @param maxDepth max number of directory levels to visit
+     * @param visitor the file visitor
+     */
+    public CosTreeWalker(CosFileSystemProvider provider, int maxDepth, FileVisitor<? super Path> visitor) {
+        this.provider = provider;
+        this.maxDepth = maxDepth;
+        this.visitor = visitor;
+    }
+
+    /**
+     * walk
+     * walk the tree starting from the given path
+     *
+     * @param start the start path
+     * @throws IOException if thrown by the visitor or if the tree cannot be listed
+     */
+    public void walk(CosPath start) throws IOException {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = provider.readAttributes(start, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            visitor.visitFileFailed(start, e);
+            return;
+        }
+        if (!attrs.isDirectory() || maxDepth <= 0) {
+            visitor.visitFile(start, attrs);
+            return;
+        }
+        final FileVisitResult result = visitor.preVisitDirectory(start, attrs);
+        if (result != FileVisitResult.CONTINUE) {
+            return;
+        }
+
+        final String prefix = start.getKey().isEmpty() ? "" : start.getKey() + "/";
+        stack.push(new Dir(start, prefix, false, true));
+        try {
+            final Iterator<COSObjectSummary> it = start.getFileSystem().getClient()
+                    .iterateObjects(start.getBucket(), prefix);
+            while (!terminated && it.hasNext()) {
+                visitKey(start, it.next());
+            }
+        } catch (CosClientException e) {
+            throw new IOException("Failed to list " + start.toUri(), e);
+        }
+        while (!terminated && !stack.isEmpty()) {
+            leave();
+        }
+    }
+
+    private void visitKey(CosPath start, COSObjectSummary summary) throws IOException {
+        final String key = summary.getKey();
+        // leave the directories the key is not in
+        while (stack.size() > 1 && !key.startsWith(stack.peek().key)) {
+            leave();
+            if (terminated) {
+                return;
+            }
+        }
+
+        // enter the directories between the current one and the key
+        final CosAttributesCache cache = start.getFileSystem().getClient().getAttributesCache();
+        int p;
+        while (!stack.peek().skip && (p = key.indexOf('/', stack.peek().key.length())) >= 0) {
+            if (p == stack.peek().key.length()) {
+                // an empty name, not a path of the file system
+                return;
+            }
+            final String dirKey = key.substring(0, p + 1);
+            final CosPath path = directoryPath(cache, start, dirKey);
+            final BasicFileAttributes attrs = new CosFileAttributes(dirKey, null, 0, true, false);
+            if (stack.size() >= maxDepth) {
+                // a directory at the max depth is visited as a file, its content is ignored
+                final FileVisitResult result = visitor.visitFile(path, attrs);
+                stack.push(new Dir(path, dirKey, true, false));
+                skipSiblings(result);
+                return;
+            }
+            final FileVisitResult result = visitor.preVisitDirectory(path, attrs);
+            final boolean enter = result == FileVisitResult.CONTINUE;
+            stack.push(new Dir(path, dirKey, !enter, enter));
+            if (!enter) {
+                skipSiblings(result);
+                return;
+            }
+        }
+        if (stack.peek().skip || key.endsWith("/")) {
+            // skipped, or the marker of a directory entered above
+            return;
+        }
+
+        cache.put(start.getBucket(), key, summary);
+        final CosPath path = new CosPath(start.getFileSystem(), "/" + start.getBucket(), key.split("/"));
+        path.setObjectSummary(summary);
+        final FileTime lastModified = summary.getLastModified() != null
+                ? FileTime.from(summary.getLastModified().getTime(), TimeUnit.MILLISECONDS) : null;
+        final FileVisitResult result = visitor.visitFile(path,
+                new CosFileAttributes(key, lastModified, summary.getSize(), false, true));
+        if (result == FileVisitResult.TERMINATE) {
+            terminated = true;
+        } else if (result == FileVisitResult.SKIP_SIBLINGS) {
+            stack.peek().skip = true;
+        }
+    }
+
+    /**
+     * apply the result of the visit of the directory on top of the stack to its parent
+     */
+    private void skipSiblings(FileVisitResult result) {
+        if (result == FileVisitResult.TERMINATE) {
+            terminated = true;
+        } else if (result == FileVisitResult.SKIP_SIBLINGS) {
+            final Dir current = stack.pop();
+            stack.peek().skip = true;
+            stack.push(current);
+        }
+    }
+
+    private void leave() throws IOException {
+        final Dir dir = stack.pop();
+        // skip siblings is a no-op after the post visit, as with Files.walkFileTree
+        if (dir.postVisit && visitor.postVisitDirectory(dir.path, null) == FileVisitResult.TERMINATE) {
+            terminated = true;
+        }
+    }
+
+    private static CosPath directoryPath(CosAttributesCache cache, CosPath start, String dir) {
+        // the directory is known to exist, its summary is the one of a directory marker
+        final COSObjectSummary summary = new COSObjectSummary();
+        summary.setBucketName(start.getBucket());
+        summary.setKey(dir);
+        cache.put(start.getBucket(), dir.substring(0, dir.length() - 1), summary);
+        return new CosPath(start.getFileSystem(), "/" + start.getBucket(), dir);
+    }
+}
@@ -0,0 +1,237 @@
+package nextflow.tencentcloud.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosWriteChannel
+ * write only channel streaming the content into a multipart upload as it is written, a copy of
+ * the content is kept in a local spill file. when the writer moves backwards the upload is aborted,
+ * so nothing is created at the target, and the channel continues on the file, which is uploaded on close
+ */
+public class CosWriteChannel implements SeekableByteChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(CosWriteChannel.class);
+
+    private static final int ZERO_FILL_SIZE = 64 * 1024;
+
+    private final CosPath path;
+    // the upload stream, null once aborted by a backward move
+    private CosOutputStream out;
+    // bytes written into the upload stream
+    private long written;
+    private long position;
+    private volatile boolean open = true;
+
+    private Path spillFile;
+    private FileChannel spill;
+    // the failure of the local copy, the channel cannot be used any more
+    private IOException failure;
+
+    /**
+     * @param path target path
+     * @param out upload stream of the target object
+     */
+    public CosWriteChannel(CosPath path, CosOutputStream out) {
+        this.path = path;
+        this.out = out;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        if (out != null && position < written) {
+            spill();
+        }
+        if (out == null) {
+            final int n = spill.write(src, position);
+            position += n;
+            return n;
+        }
+
+        // a forward seek leaves a gap which reads as zeros
+        if (position > written) {
+            fillZeros(position - written);
+        }
+        final int n = src.remaining();
+        if (src.hasArray()) {
+            stream(src.array(), src.arrayOffset() + src.position(), n);
+            ((java.nio.Buffer) src).position(src.position() + n);
+        } else {
+            final byte[] chunk = new byte[Math.min(n, ZERO_FILL_SIZE)];
+            while (src.hasRemaining()) {
+                final int len = Math.min(chunk.length, src.remaining());
+                src.get(chunk, 0, len);
+                stream(chunk, 0, len);
+            }
+        }
+        position = written;
+        return n;
+    }
+
+    private void fillZeros(long len) throws IOException {
+        final byte[] zeros = new byte[(int) Math.min(len, ZERO_FILL_SIZE)];
+        long remaining = len;
+        while (remaining > 0) {
+            final int n = (int) Math.min(remaining, zeros.length);
+            stream(zeros, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * write into the upload stream and into the local copy, a failure of the copy aborts the upload
+     */
+    private void stream(byte[] b, int off, int len) throws IOException {
+        try {
+            if (spill == null) {
+                final Path dir = Files.createTempDirectory("temp-cos-");
+                spillFile = dir.resolve(path.getFileName().toString());
+                spill = FileChannel.open(spillFile, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            final ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            while (src.hasRemaining()) {
+                spill.write(src, written + src.position() - off);
+            }
+        } catch (IOException e) {
+            failure = e;
+            abort();
+            throw failure;
+        }
+        out.write(b, off, len);
+        written += len;
+    }
+
+    /**
+     * the writer moved backwards: abort the upload and continue writing on the local copy
+     * of the content written so far
+     */
+    private void spill() {
+        log.debug("Cos write channel for {} moved backwards to {} of {} bytes -- continuing on local disk",
+                path.toUri(), position, written);
+        abortUpload();
+    }
+
+    private void abort() {
+        abortUpload();
+        closeSpill();
+    }
+
+    private void abortUpload() {
+        final CosOutputStream stream = out;
+        out = null;
+        try {
+            stream.abort();
+        } catch (IOException e) {
+            log.debug("Failed to abort upload of {} -- Cause: {}", path.toUri(), e.getMessage());
+        }
+    }
+
+    private void closeSpill() {
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to close spill file {} -- Cause: {}", spillFile, e.getMessage());
+        }
+        try {
+            Files.deleteIfExists(spillFile);
+            Files.deleteIfExists(spillFile.getParent());
+        } catch (IOException e) {
+            log.debug("Failed to delete spill file {} -- Cause: {}", spillFile, e.getMessage());
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        throw new NonReadableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must be non-negative: " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return out == null ? spill.size() : written;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel truncate(long size) throws IOException {
+        ensureOpen();
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must be non-negative: " + size);
+        }
+        if (out != null && size < written) {
+            spill();
+        }
+        if (out == null) {
+            spill.truncate(size);
+        }
+        position = Math.min(position, size);
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        if (failure != null) {
+            // the upload has been aborted and the local copy deleted by the failure
+            return;
+        }
+        try {
+            if (out != null) {
+                out.close();
+            } else {
+                spill.close();
+                path.getFileSystem().getClient().uploadFile(spillFile.toFile(), path);
+            }
+        } finally {
+            closeSpill();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (failure != null) {
+            throw new IOException("Cos write channel for " + path.toUri() + " failed", failure);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AdaptiveConcurrency
+ * limit on the number of concurrent part uploads tuned from the measured throughput.
+ * the limit is increased while each window of completed parts is faster than the previous
+ * one, and reduced when the throughput drops noticeably
+ */
+public class AdaptiveConcurrency {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrency.class);
+
+    /**
+     * min throughput gain to keep increasing the limit
+     */
+    private static final double GROW_THRESHOLD = 1.10;
+
+    /**
+     * throughput drop causing the limit to be reduced
+     */
+    private static final double SHRINK_THRESHOLD = 0.75;
+
+    private static final int MIN_WINDOW = 4;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+
+    private int limit;
+    private int active;
+    private long windowStart;
+    private long windowBytes;
+    private int windowCount;
+    private double lastThroughput;
+
+    public AdaptiveConcurrency(int initialLimit, int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.min(Math.max(1, initialLimit), this.maxLimit);
+        this.limit = this.minLimit;
+    }
+
+    /**
+     * acquire
+     * wait for a free upload slot
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedIOException {
+        lock.lock();
+        try {
+            while (active >= limit) {
+                available.await();
+            }
+            active++;
+            if (windowStart == 0) {
+                windowStart = System.nanoTime();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload slot");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * release
+     * free the slot taken by {@link #acquire()} and account for the uploaded bytes
+     *
+     * @param bytes the bytes uploaded, zero when the upload failed
+     */
+    public void release(long bytes) {
+        lock.lock();
+        try {
+            active--;
+            windowBytes += bytes;
+            windowCount++;
+            if (windowCount >= Math.max(MIN_WINDOW, limit)) {
+                adjust();
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust() {
+        final long elapsed = System.nanoTime() - windowStart;
+        final double throughput = elapsed > 0 ? windowBytes * 1e9 / elapsed : 0;
+        final int previous = limit;
+        if (lastThroughput == 0 || throughput >= lastThroughput * GROW_THRESHOLD) {
+            limit = Math.min(maxLimit, limit + Math.max(1, limit / 2));
+        } else if (throughput < lastThroughput * SHRINK_THRESHOLD) {
+            limit = Math.max(minLimit, limit - Math.max(1, limit / 4));
+        }
+        if (limit != previous) {
+            log.debug("Cos upload concurrency changed from {} to {} -- throughput: {} MiB/s",
+                    previous, limit, String.format("%.1f", throughput / (1 << 20)));
+        }
+        lastThroughput = throughput;
+        windowStart = active > 0 ? System.nanoTime() : 0;
+        windowBytes = 0;
+        windowCount = 0;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ByteBufferPool
+ * pool of heap buffers shared by the upload streams, the buffers are grouped by capacity
+ * and at most {@code maxPooledBytes} are retained while idle
+ */
+public class ByteBufferPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ByteBufferPool.class);
+
+    private final Map<Integer, Queue<ByteBuffer>> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong allocatedCount = new AtomicLong();
+    private final long maxPooledBytes;
+
+    public ByteBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * acquire
+     * get a cleared buffer of the given capacity, a new one is allocated when the pool is empty
+     *
+     * @param capacity buffer capacity
+     * @return the buffer
+     */
+    public ByteBuffer acquire(int capacity) {
+        final Queue<ByteBuffer> queue = buffers.get(capacity);
+        final ByteBuffer result = queue != null ? queue.poll() : null;
+        if (result != null) {
+            pooledBytes.addAndGet(-capacity);
+            ((java.nio.Buffer) result).clear();
+            return result;
+        }
+        log.debug("Allocating new buffer of {} bytes, total buffers {}", capacity, allocatedCount.incrementAndGet());
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * release
+     * return a buffer to the pool, it is dropped when the pool is full
+     *
+     * @param buffer the buffer no longer used by the caller
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        final int capacity = buffer.capacity();
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+        buffers.computeIfAbsent(capacity, k -> new ConcurrentLinkedQueue<>()).offer(buffer);
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+}
@@ -0,0 +1,168 @@
+package nextflow.tencentcloud.nio.util;
+
+import com.qcloud.cos.model.COSObjectSummary;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CosAttributesCache
+ * bounded cache of the object summaries looked up by a file system, each entry expires after
+ * its time to live. paths found missing are cached as well, with their own shorter time to live.
+ * writes and deletes done through the file system drop the entries of the path and of its parents
+ */
+public class CosAttributesCache {
+
+    private final long ttl;
+    private final long negativeTtl;
+    private final int maxSize;
+    private final Map<String, Entry> entries;
+
+    public CosAttributesCache(long ttl, long negativeTtl, int maxSize) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxSize = maxSize;
+        // access ordered, so that the least recently used entry is evicted first
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CosAttributesCache.this.maxSize;
+            }
+        };
+    }
+
+    public static CosAttributesCache forOptions(CosDownloadOptions opts) {
+        return new CosAttributesCache(opts.getMetadataCacheTtl(), opts.getMetadataCacheNegativeTtl(),
+                opts.getMetadataCacheMaxSize());
+    }
+
+    /**
+     * get
+     * the cached lookup of the given path
+     *
+     * @param bucket bucket name
+     * @param key path key
+     * @return the entry, or null when the path is not cached or the entry expired
+     */
+    public synchronized Entry get(String bucket, String key) {
+        final String name = name(bucket, key);
+        final Entry result = entries.get(name);
+        if (result != null && result.expires < System.currentTimeMillis()) {
+            entries.remove(name);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * put
+     * cache the summary found for the given path
+     */
+    public synchronized void put(String bucket, String key, COSObjectSummary summary) {
+        if (ttl <= 0 || maxSize <= 0) {
+            return;
+        }
+        entries.put(name(bucket, key), new Entry(summary, System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * putObject
+     * cache the summary of an object just written by the file system, the entries of its
+     * parents are dropped since they may tell the parents are missing
+     */
+    public synchronized void putObject(String bucket, String key, long size, String etag) {
+        removeParents(bucket, key);
+        final COSObjectSummary summary = new COSObjectSummary();
+        summary.setBucketName(bucket);
+        summary.setKey(key);
+        summary.setSize(size);
+        summary.setETag(etag);
+        summary.setLastModified(new Date());
+        put(bucket, key, summary);
+    }
+
+    /**
+     * cache the given path as missing
+     */
+    public synchronized void putMissing(String bucket, String key) {
+        if (negativeTtl <= 0 || maxSize <= 0) {
+            return;
+        }
+        entries.put(name(bucket, key), new Entry(null, System.currentTimeMillis() + negativeTtl));
+    }
+
+    /**
+     * invalidate
+     * drop the entries of the given path and of its parents
+     */
+    public synchronized void invalidate(String bucket, String key) {
+        entries.remove(name(bucket, stripSlash(key)));
+        removeParents(bucket, key);
+    }
+
+    /**
+     * invalidateTree
+     * drop the entries of the given path, of its parents and of everything below it
+     */
+    public synchronized void invalidateTree(String bucket, String key) {
+        invalidate(bucket, key);
+        final String prefix = name(bucket, stripSlash(key)) + "/";
+        final Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void removeParents(String bucket, String key) {
+        String current = stripSlash(key);
+        int p;
+        while ((p = current.lastIndexOf('/')) > 0) {
+            current = current.substring(0, p);
+            entries.remove(name(bucket, current));
+        }
+        entries.remove(name(bucket, ""));
+    }
+
+    private static String stripSlash(String key) {
+        return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+    }
+
+    private static String name(String bucket, String key) {
+        return bucket + "/" + key;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CosAttributesCache[ttl=" + ttl + "; negativeTtl=" + negativeTtl + "; maxSize=" + maxSize
+                + "; size=" + entries.size() + "]";
+    }
+
+    /**
+     * Entry
+     * a cached lookup, the summary is null when the path was found missing
+     */
+    public static class Entry {
+        private final COSObjectSummary summary;
+        private final long expires;
+
+        Entry(COSObjectSummary summary, long expires) {
+            this.summary = summary;
+            this.expires = expires;
+        }
+
+        public boolean exists() {
+            return summary != null;
+        }
+
+        public COSObjectSummary getSummary() {
+            return summary;
+        }
+    }
+}
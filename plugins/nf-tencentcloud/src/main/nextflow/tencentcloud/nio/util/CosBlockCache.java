@@ -0,0 +1,271 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosBlockCache
+ * persistent local cache of fixed size object blocks, the blocks are keyed by
+ * bucket, key, etag and offset so a changed object never hits stale data.
+ * the least recently used blocks are evicted once the cache exceeds its byte budget
+ */
+public class CosBlockCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CosBlockCache.class);
+
+    private static final String BLOCK_SUFFIX = ".blk";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Map<Path, CosBlockCache> caches = new HashMap<>();
+
+    /**
+     * load a block from tencent cos when it is not in the cache
+     */
+    public interface Loader {
+        void load(byte[] buffer, int len) throws IOException;
+    }
+
+    private final Path dir;
+    private final long maxSize;
+    private final int blockSize;
+
+    // block file name -> block size, in least recently used order
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalSize;
+
+    CosBlockCache(Path dir, long maxSize, int blockSize) throws IOException {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.blockSize = blockSize;
+        Files.createDirectories(dir);
+        restore();
+    }
+
+    /**
+     * get the cache for the download options, or null when the cache is not enabled
+     *
+     * @param opts download options
+     * @return the block cache shared by all the file systems using the same directory
+     */
+    public static CosBlockCache forOptions(CosDownloadOptions opts) {
+        if (opts.getCacheDir() == null) {
+            return null;
+        }
+        final Path dir = Paths.get(opts.getCacheDir()).toAbsolutePath().normalize();
+        synchronized (caches) {
+            CosBlockCache result = caches.get(dir);
+            if (result == null) {
+                try {
+                    result = new CosBlockCache(dir, opts.getCacheMaxSize(), opts.getCacheBlockSize());
+                } catch (IOException e) {
+                    log.warn("Unable to create Cos block cache at {} -- Cause: {}", dir, e.getMessage());
+                    return null;
+                }
+                caches.put(dir, result);
+            }
+            return result;
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * read a block into the buffer, serving it from the local disk when present
+     *
+     * @param bucket bucket name
+     * @param key object key
+     * @param etag object etag
+     * @param blockIndex index of the block in the object
+     * @param buffer target buffer
+     * @param len block length, only the last block of an object is shorter than the block size
+     * @param loader fetch the block when not cached
+     * @throws IOException if the block cannot be read
+     */
+    public void read(String bucket, String key, String etag, long blockIndex, byte[] buffer, int len,
+            Loader loader) throws IOException {
+        final String name = blockName(bucket, key, etag, blockIndex);
+        final Path file = blockPath(name);
+
+        if (contains(name) && readBlock(file, buffer, len)) {
+            log.trace("Cos block cache hit cos://{}/{} block {}", bucket, key, blockIndex);
+            return;
+        }
+
+        loader.load(buffer, len);
+        writeBlock(name, file, buffer, len);
+    }
+
+    private synchronized boolean contains(String name) {
+        // the get updates the access order
+        return index.get(name) != null;
+    }
+
+    private boolean readBlock(Path file, byte[] buffer, int len) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != len) {
+                throw new IOException("Unexpected block size " + channel.size() + " - expected " + len);
+            }
+            final ByteBuffer target = ByteBuffer.wrap(buffer, 0, len);
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) {
+                    throw new IOException("Unexpected end of block");
+                }
+            }
+            // keep the access order across restarts
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            log.debug("Discarding Cos cache block {} -- Cause: {}", file, e.getMessage());
+            remove(file.getFileName().toString());
+            return false;
+        }
+    }
+
+    private void writeBlock(String name, Path file, byte[] buffer, int len) {
+        final Path temp = file.resolveSibling(name + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                final ByteBuffer source = ByteBuffer.wrap(buffer, 0, len);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+            // readers only ever see complete blocks
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.debug("Unable to store Cos cache block {} -- Cause: {}", file, e.getMessage());
+            deleteQuietly(temp);
+            return;
+        }
+        add(name, len);
+    }
+
+    private void add(String name, long len) {
+        final List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            final Long previous = index.put(name, len);
+            totalSize += len - (previous != null ? previous : 0);
+            final Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (totalSize > maxSize && it.hasNext()) {
+                final Map.Entry<String, Long> entry = it.next();
+                if (entry.getKey().equals(name)) {
+                    continue;
+                }
+                totalSize -= entry.getValue();
+                evicted.add(entry.getKey());
+                it.remove();
+            }
+        }
+        for (String it : evicted) {
+            deleteQuietly(blockPath(it));
+        }
+        if (!evicted.isEmpty()) {
+            log.trace("Evicted {} blocks from Cos block cache {}", evicted.size(), dir);
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (this) {
+            final Long len = index.remove(name);
+            if (len != null) {
+                totalSize -= len;
+            }
+        }
+        deleteQuietly(blockPath(name));
+    }
+
+    /**
+     * rebuild the index from the blocks left by previous runs, oldest first
+     */
+    private void restore() throws IOException {
+        final List<Path> blocks;
+        try (Stream<Path> files = Files.walk(dir, 2)) {
+            blocks = files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        final List<Path> valid = new ArrayList<>();
+        for (Path it : blocks) {
+            if (it.getFileName().toString().endsWith(BLOCK_SUFFIX)) {
+                valid.add(it);
+            } else if (it.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                deleteQuietly(it);
+            }
+        }
+        valid.sort(Comparator.comparingLong(CosBlockCache::lastModified));
+
+        for (Path it : valid) {
+            try {
+                add(it.getFileName().toString(), Files.size(it));
+            } catch (IOException e) {
+                deleteQuietly(it);
+            }
+        }
+        log.debug("Cos block cache {} - blocks: {}; size: {}; max size: {}",
+                dir, index.size(), totalSize, maxSize);
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private String blockName(String bucket, String key, String etag, long blockIndex) {
+        final String id = bucket + "/" + key + "@" + etag + "#" + blockSize + ":" + blockIndex;
+        return sha256(id) + BLOCK_SUFFIX;
+    }
+
+    private Path blockPath(String name) {
+        return dir.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static String sha256(String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot find a SHA-256 algorithm provider", e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.trace("Unable to delete {} -- Cause: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosDownloadCheckpoint
+ * sidecar file recording the ranges of an object already downloaded, along with
+ * the object etag, size and part size. it is only valid for the same object version
+ */
+public class CosDownloadCheckpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(CosDownloadCheckpoint.class);
+
+    private final Path file;
+    private final String etag;
+    private final long size;
+    private final long partSize;
+    private final BitSet completed;
+
+    private CosDownloadCheckpoint(Path file, String etag, long size, long partSize, BitSet completed) {
+        this.file = file;
+        this.etag = etag;
+        this.size = size;
+        this.partSize = partSize;
+        this.completed = completed;
+    }
+
+    /**
+     * load the checkpoint file, a fresh checkpoint is returned when the file does not exist,
+     * it cannot be read, or it was recorded for a different object version
+     *
+     * @param file checkpoint file
+     * @param etag current object etag
+     * @param size current object size
+     * @param partSize range size
+     * @return the checkpoint
+     */
+    public static CosDownloadCheckpoint load(Path file, String etag, long size, long partSize) {
+        if (etag == null) {
+            etag = "";
+        }
+        if (Files.exists(file)) {
+            final Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+                if (Objects.equals(etag, props.getProperty("etag"))
+                        && size == Long.parseLong(props.getProperty("size"))
+                        && partSize == Long.parseLong(props.getProperty("partSize"))) {
+                    final BitSet parts = BitSet.valueOf(Base64.getDecoder().decode(props.getProperty("parts", "")));
+                    log.debug("Resuming Cos download from checkpoint {} - completed parts: {}",
+                            file, parts.cardinality());
+                    return new CosDownloadCheckpoint(file, etag, size, partSize, parts);
+                }
+                log.debug("Discarding Cos download checkpoint {} -- the object has changed", file);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Discarding Cos download checkpoint {} -- Cause: {}", file, e.getMessage());
+            }
+        }
+        return new CosDownloadCheckpoint(file, etag, size, partSize, new BitSet());
+    }
+
+    public synchronized boolean isCompleted(long part) {
+        return completed.get((int) part);
+    }
+
+    public synchronized boolean isEmpty() {
+        return completed.isEmpty();
+    }
+
+    public synchronized int completedCount() {
+        return completed.cardinality();
+    }
+
+    /**
+     * mark the part as downloaded and persist the checkpoint
+     */
+    public synchronized void complete(long part) throws IOException {
+        completed.set((int) part);
+        save();
+    }
+
+    public synchronized void reset() {
+        completed.clear();
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private void save() throws IOException {
+        final Properties props = new Properties();
+        props.setProperty("etag", etag);
+        props.setProperty("size", String.valueOf(size));
+        props.setProperty("partSize", String.valueOf(partSize));
+        props.setProperty("parts", Base64.getEncoder().encodeToString(completed.toByteArray()));
+
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            props.store(out, null);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
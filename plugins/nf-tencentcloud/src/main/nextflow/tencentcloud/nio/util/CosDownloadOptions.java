@@ -0,0 +1,196 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class CosDownloadOptions {
+
+    public static final int DEFAULT_PART_SIZE = 8 << 20;  // 8 MiB
+
+    public static final int DEFAULT_WINDOW_SIZE = 8;
+
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 32 << 20;  // 32 MiB
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    public static final int DEFAULT_RETRY_SLEEP = 500;
+
+    public static final int DEFAULT_DIRECTORY_WORKERS = 16;
+
+    public static final long DEFAULT_CACHE_MAX_SIZE = 10L << 30;  // 10 GiB
+
+    public static final int DEFAULT_CACHE_BLOCK_SIZE = 8 << 20;  // 8 MiB
+
+    public static final long DEFAULT_METADATA_CACHE_TTL = 10_000;
+
+    public static final long DEFAULT_METADATA_CACHE_NEGATIVE_TTL = 2_000;
+
+    public static final int DEFAULT_METADATA_CACHE_MAX_SIZE = 10_000;
+
+    public static final int DEFAULT_LIST_PARALLELISM = 1;
+
+    /**
+     * size of each range request
+     */
+    private final int partSize;
+
+    /**
+     * number of parts fetched ahead of the reader
+     */
+    private final int windowSize;
+
+    private final int maxThreads;
+
+    /**
+     * objects smaller than this are read with a single request
+     */
+    private final long parallelThreshold;
+
+    private final int maxAttempts;
+
+    private final long retrySleep;
+
+    /**
+     * number of files downloaded concurrently by a directory download
+     */
+    private final int directoryWorkers;
+
+    /**
+     * record the downloaded ranges of large objects so an interrupted download can be resumed
+     */
+    private final boolean checkpoint;
+
+    /**
+     * local directory of the block cache, the cache is disabled when not set
+     */
+    private final String cacheDir;
+
+    private final long cacheMaxSize;
+
+    private final int cacheBlockSize;
+
+    /**
+     * time to live of the cached path attributes, the cache is disabled when zero
+     */
+    private final long metadataCacheTtl;
+
+    /**
+     * time to live of the paths cached as missing, kept short since other processes may create them
+     */
+    private final long metadataCacheNegativeTtl;
+
+    private final int metadataCacheMaxSize;
+
+    /**
+     * number of concurrent list requests of the directory listings and walks,
+     * the listings are sequential when one
+     */
+    private final int listParallelism;
+
+    public CosDownloadOptions() {
+        this(Collections.<String, Object>emptyMap());
+    }
+
+    public CosDownloadOptions(Map<String, ?> config) {
+        partSize = (int) OptionsHelper.parseSize(config.get("downloadPartSize"), DEFAULT_PART_SIZE);
+        windowSize = OptionsHelper.parseInt(config.get("downloadWindowSize"), DEFAULT_WINDOW_SIZE);
+        maxThreads = OptionsHelper.parseInt(config.get("downloadMaxThreads"),
+                Runtime.getRuntime().availableProcessors() * 3);
+        parallelThreshold = OptionsHelper.parseSize(config.get("downloadParallelThreshold"),
+                DEFAULT_PARALLEL_THRESHOLD);
+        maxAttempts = OptionsHelper.parseInt(config.get("downloadMaxAttempts"), DEFAULT_MAX_ATTEMPTS);
+        retrySleep = OptionsHelper.parseDuration(config.get("downloadRetrySleep"), DEFAULT_RETRY_SLEEP);
+        directoryWorkers = OptionsHelper.parseInt(config.get("downloadDirectoryWorkers"),
+                DEFAULT_DIRECTORY_WORKERS);
+        checkpoint = OptionsHelper.parseBoolean(config.get("downloadCheckpoint"), false);
+        cacheDir = OptionsHelper.parseString(config.get("cacheDir"), null);
+        cacheMaxSize = OptionsHelper.parseSize(config.get("cacheMaxSize"), DEFAULT_CACHE_MAX_SIZE);
+        cacheBlockSize = (int) OptionsHelper.parseSize(config.get("cacheBlockSize"), DEFAULT_CACHE_BLOCK_SIZE);
+        metadataCacheTtl = OptionsHelper.parseDuration(config.get("metadataCacheTtl"), DEFAULT_METADATA_CACHE_TTL);
+        metadataCacheNegativeTtl = OptionsHelper.parseDuration(config.get("metadataCacheNegativeTtl"),
+                DEFAULT_METADATA_CACHE_NEGATIVE_TTL);
+        metadataCacheMaxSize = OptionsHelper.parseInt(config.get("metadataCacheMaxSize"),
+                DEFAULT_METADATA_CACHE_MAX_SIZE);
+        listParallelism = Math.max(1, OptionsHelper.parseInt(config.get("listParallelism"),
+                DEFAULT_LIST_PARALLELISM));
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public long getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getRetrySleep() {
+        return retrySleep;
+    }
+
+    public int getDirectoryWorkers() {
+        return directoryWorkers;
+    }
+
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public long getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public int getCacheBlockSize() {
+        return cacheBlockSize;
+    }
+
+    public long getMetadataCacheTtl() {
+        return metadataCacheTtl;
+    }
+
+    public long getMetadataCacheNegativeTtl() {
+        return metadataCacheNegativeTtl;
+    }
+
+    public int getMetadataCacheMaxSize() {
+        return metadataCacheMaxSize;
+    }
+
+    public int getListParallelism() {
+        return listParallelism;
+    }
+
+    @Override
+    public String toString() {
+        return "partSize=" + partSize
+                + "; windowSize=" + windowSize
+                + "; maxThreads=" + maxThreads
+                + "; parallelThreshold=" + parallelThreshold
+                + "; maxAttempts=" + maxAttempts
+                + "; retrySleep=" + retrySleep
+                + "; directoryWorkers=" + directoryWorkers
+                + "; checkpoint=" + checkpoint
+                + "; cacheDir=" + cacheDir
+                + "; cacheMaxSize=" + cacheMaxSize
+                + "; cacheBlockSize=" + cacheBlockSize
+                + "; metadataCacheTtl=" + metadataCacheTtl
+                + "; metadataCacheNegativeTtl=" + metadataCacheNegativeTtl
+                + "; metadataCacheMaxSize=" + metadataCacheMaxSize
+                + "; listParallelism=" + listParallelism;
+    }
+}
@@ -0,0 +1,165 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import nextflow.util.ThreadPoolManager;
+
+/**
+ * CosExecutors
+ * the named thread pools shared by the transfers of the process, and the ways to wait for the
+ * tasks submitted to them
+ */
+public final class CosExecutors {
+
+    /**
+     * the number of failures attached as suppressed to the reported one
+     */
+    private static final int MAX_SUPPRESSED = 10;
+
+    private static final Map<String, ExecutorService> pools = new HashMap<>();
+
+    private CosExecutors() {
+    }
+
+    /**
+     * getOrCreate
+     * the pool with the given name, created with the given number of threads by the first caller
+     *
+     * @param name pool name, also the name of its threads
+     * @param maxThreads the number of threads of the pool when it is created
+     * @return the pool
+     */
+    public static synchronized ExecutorService getOrCreate(String name, int maxThreads) {
+        ExecutorService result = pools.get(name);
+        if (result == null) {
+            result = ThreadPoolManager.create(name, maxThreads);
+            pools.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * awaitAll
+     * wait for all the futures, the first failure cancels the others and is thrown
+     *
+     * @param futures the futures to wait for
+     * @param action the action of the tasks, e.g. "upload", for the error messages
+     * @param target the object the tasks act on, for the error messages
+     * @throws IOException the failure of the first failed task
+     */
+    public static void awaitAll(List<? extends Future<?>> futures, String action, String target) throws IOException {
+        try {
+            for (Future<?> it : futures) {
+                it.get();
+            }
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw interrupted(action, target);
+        } catch (ExecutionException | CancellationException e) {
+            cancelAll(futures);
+            final Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException("Failed to " + action + " " + target, cause);
+        }
+    }
+
+    /**
+     * awaitEach
+     * wait for all the futures whatever the failures
+     *
+     * @param futures the futures to wait for
+     * @param action the action of the tasks, e.g. "upload", for the error messages
+     * @param target the object the tasks act on, for the error messages
+     * @return the failures of the tasks
+     * @throws InterruptedIOException if the wait is interrupted, the tasks are cancelled
+     */
+    public static Failures awaitEach(List<? extends Future<?>> futures, String action, String target)
+            throws InterruptedIOException {
+        return awaitEach(futures, it -> { }, action, target);
+    }
+
+    /**
+     * awaitEach
+     * wait for all the futures whatever the failures, the result of each successful task is passed
+     * to the given consumer
+     *
+     * @param futures the futures to wait for
+     * @param onResult the consumer of the results
+     * @param action the action of the tasks, e.g. "upload", for the error messages
+     * @param target the object the tasks act on, for the error messages
+     * @return the failures of the tasks
+     * @throws InterruptedIOException if the wait is interrupted, the tasks are cancelled
+     */
+    public static <T> Failures awaitEach(List<? extends Future<? extends T>> futures, Consumer<? super T> onResult,
+            String action, String target) throws InterruptedIOException {
+        final Failures result = new Failures();
+        try {
+            for (Future<? extends T> it : futures) {
+                try {
+                    onResult.accept(it.get());
+                } catch (ExecutionException e) {
+                    result.add(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw interrupted(action, target);
+        }
+        return result;
+    }
+
+    private static InterruptedIOException interrupted(String action, String target) {
+        return new InterruptedIOException(
+                Character.toUpperCase(action.charAt(0)) + action.substring(1) + " interrupted for " + target);
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> it : futures) {
+            it.cancel(true);
+        }
+    }
+
+    /**
+     * Failures
+     * the failures of a group of tasks, the first one carries the next ones as suppressed
+     */
+    public static final class Failures {
+
+        private int count;
+        private IOException error;
+
+        private void add(Throwable cause) {
+            count++;
+            final IOException ex = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            if (error == null) {
+                error = ex;
+            } else if (count <= MAX_SUPPRESSED) {
+                error.addSuppressed(ex);
+            }
+        }
+
+        /**
+         * @return the number of failed tasks
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the first failure, or null when all the tasks succeeded
+         */
+        public IOException getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * CosGlobs
+ * translate glob patterns, with the syntax of {@link java.nio.file.FileSystem#getPathMatcher},
+ * to regular expressions
+ */
+public final class CosGlobs {
+
+    private static final String REGEX_META = ".^$+{}[]|()*?\\";
+
+    private CosGlobs() {
+    }
+
+    /**
+     * toRegexPattern
+     * the regular expression matching the same paths as the given glob
+     *
+     * @param glob glob pattern
+     * @return the regular expression
+     * @throws PatternSyntaxException if the glob is not valid
+     */
+    public static String toRegexPattern(String glob) {
+        final StringBuilder regex = new StringBuilder("^");
+        boolean inGroup = false;
+        int i = 0;
+        while (i < glob.length()) {
+            final char c = glob.charAt(i++);
+            switch (c) {
+                case '\\':
+                    if (i == glob.length()) {
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    }
+                    appendLiteral(regex, glob.charAt(i++));
+                    break;
+                case '/':
+                    regex.append(c);
+                    break;
+                case '[':
+                    i = appendClass(regex, glob, i);
+                    break;
+                case '{':
+                    if (inGroup) {
+                        throw new PatternSyntaxException("Cannot nest groups", glob, i - 1);
+                    }
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    if (inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+                    } else {
+                        regex.append('}');
+                    }
+                    break;
+                case ',':
+                    regex.append(inGroup ? ")|(?:" : ",");
+                    break;
+                case '*':
+                    if (i < glob.length() && glob.charAt(i) == '*') {
+                        // crosses directory boundaries
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                default:
+                    appendLiteral(regex, c);
+            }
+        }
+        if (inGroup) {
+            throw new PatternSyntaxException("Missing '}'", glob, i - 1);
+        }
+        return regex.append('$').toString();
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if (REGEX_META.indexOf(c) >= 0) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+
+    /**
+     * append the bracket expression starting after the given '[', a class never matches '/'
+     *
+     * @return the index following the closing ']'
+     */
+    private static int appendClass(StringBuilder regex, String glob, int i) {
+        regex.append("[[^/]&&[");
+        if (i < glob.length() && glob.charAt(i) == '^') {
+            // a caret is a literal, negation is written with '!'
+            regex.append("\\^");
+            i++;
+        } else {
+            if (i < glob.length() && glob.charAt(i) == '!') {
+                regex.append('^');
+                i++;
+            }
+            if (i < glob.length() && glob.charAt(i) == '-') {
+                regex.append('-');
+                i++;
+            }
+        }
+        boolean hasRangeStart = false;
+        char last = 0;
+        while (i < glob.length()) {
+            final char c = glob.charAt(i++);
+            if (c == ']') {
+                regex.append("]]");
+                return i;
+            }
+            if (c == '/') {
+                throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i - 1);
+            }
+            if (c == '\\' || c == '[' || c == '&' && i < glob.length() && glob.charAt(i) == '&') {
+                regex.append('\\');
+            }
+            regex.append(c);
+            if (c == '-') {
+                if (!hasRangeStart) {
+                    throw new PatternSyntaxException("Invalid range", glob, i - 1);
+                }
+                if (i == glob.length()) {
+                    break;
+                }
+                final char end = glob.charAt(i++);
+                if (end < last) {
+                    throw new PatternSyntaxException("Invalid range", glob, i - 3);
+                }
+                regex.append(end);
+                hasRangeStart = false;
+            } else {
+                hasRangeStart = true;
+                last = c;
+            }
+        }
+        throw new PatternSyntaxException("Missing ']'", glob, i - 1);
+    }
+}
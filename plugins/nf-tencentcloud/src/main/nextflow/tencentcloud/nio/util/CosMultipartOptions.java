@@ -1,5 +1,9 @@
 package nextflow.tencentcloud.nio.util;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
 @SuppressWarnings("unchecked")
 public class CosMultipartOptions {
 
@@ -9,34 +13,224 @@ public class CosMultipartOptions {
 
     public static final long DEFAULT_MAX_COPY_SIZE = 5_000_000_000L;
 
+    /**
+     * max size of an object uploaded with a single put object request
+     */
+    public static final long MAX_PUT_SIZE = 5_000_000_000L;
+
     public static final int DEFAULT_MAX_ATTEMPTS = 5;
 
     public static final int DEFAULT_RETRY_SLEEP = 500;
 
+    public static final long DEFAULT_MULTIPART_THRESHOLD = 100 << 20;  // 100 MiB
+
+    public static final int DEFAULT_DIRECTORY_WORKERS = 16;
+
+    public static final long DEFAULT_MAX_RETRY_SLEEP = 30_000;
+
+    public static final long DEFAULT_COPY_CHUNK_SIZE = 256L << 20;  // 256 MiB
+
+    public static final int DEFAULT_COPY_MAX_THREADS = 32;
+
+    /**
+     * a multipart copy uses one more concurrent part copy for every this number of bytes
+     */
+    public static final long COPY_BYTES_PER_THREAD = 1L << 30;  // 1 GiB
+
+    /**
+     * max number of parts of a multipart upload accepted by tencent cos
+     */
+    public static final int MAX_PARTS = 10_000;
+
+    /**
+     * min size of any part but the last one
+     */
+    public static final int MIN_PART_SIZE = 5 << 20;  // 5 MiB
+
+    public static final long MAX_PART_SIZE = 5L << 30;  // 5 GiB
+
+    /**
+     * in adaptive mode the part size of a stream is doubled every this number of parts
+     */
+    public static final int ADAPTIVE_PARTS_STEP = 2_000;
+
+    public static final int DEFAULT_ADAPTIVE_INITIAL_THREADS = 4;
+
+    private static final long ONE_MIB = 1 << 20;
+
+    /**
+     * part size of the uploads of local files
+     */
     private final int chunkSize;
 
     private final int maxThreads;
 
+    /**
+     * part size of the upload streams
+     */
     private final int bufferSize;
 
     private final long maxCopySize;
 
     private final int maxAttempts;
 
+    /**
+     * initial pause before retrying a part, doubled on each attempt up to maxRetrySleep
+     */
     private final long retrySleep;
 
+    private final long maxRetrySleep;
 
-    {
-        chunkSize = DEFAULT_CHUNK_SIZE;
-        maxThreads = Runtime.getRuntime().availableProcessors() * 3;
-        bufferSize = DEFAULT_BUFFER_SIZE;
-        maxCopySize = DEFAULT_MAX_COPY_SIZE;
-        maxAttempts = DEFAULT_MAX_ATTEMPTS;
-        retrySleep = DEFAULT_RETRY_SLEEP;
-    }
+    /**
+     * send the md5 of each part besides verifying the crc64 returned by tencent cos
+     */
+    private final boolean checksumMd5;
+
+    /**
+     * max bytes held by the part buffers of all the upload streams of the process
+     */
+    private final long maxMemory;
+
+    /**
+     * pick the part size from the object size and grow the upload concurrency
+     * while the throughput keeps improving
+     */
+    private final boolean adaptive;
+
+    /**
+     * local files larger than this are uploaded with a multipart upload
+     */
+    private final long multipartThreshold;
+
+    /**
+     * number of files uploaded concurrently by a directory upload
+     */
+    private final int directoryWorkers;
+
+    /**
+     * persist the state of multipart uploads so that a failed upload can be resumed
+     */
+    private final boolean checkpoint;
+
+    private final String checkpointDir;
+
+    /**
+     * part size of the server side multipart copies
+     */
+    private final long copyChunkSize;
+
+    /**
+     * size of the pool running the part copies of all the multipart copies to a region
+     */
+    private final int copyMaxThreads;
 
     public CosMultipartOptions() {
+        this(Collections.<String, Object>emptyMap());
+    }
+
+    public CosMultipartOptions(Map<String, ?> config) {
+        chunkSize = (int) clampPartSize(OptionsHelper.parseSize(config.get("uploadChunkSize"), DEFAULT_CHUNK_SIZE));
+        maxThreads = Math.max(1, OptionsHelper.parseInt(config.get("uploadMaxThreads"),
+                Runtime.getRuntime().availableProcessors() * 3));
+        bufferSize = (int) clampPartSize(OptionsHelper.parseSize(config.get("uploadBufferSize"), DEFAULT_BUFFER_SIZE));
+        maxCopySize = OptionsHelper.parseSize(config.get("uploadMaxCopySize"), DEFAULT_MAX_COPY_SIZE);
+        maxAttempts = Math.max(1, OptionsHelper.parseInt(config.get("uploadMaxAttempts"), DEFAULT_MAX_ATTEMPTS));
+        retrySleep = OptionsHelper.parseDuration(config.get("uploadRetrySleep"), DEFAULT_RETRY_SLEEP);
+        maxRetrySleep = OptionsHelper.parseDuration(config.get("uploadMaxRetrySleep"), DEFAULT_MAX_RETRY_SLEEP);
+        checksumMd5 = OptionsHelper.parseBoolean(config.get("uploadChecksumMd5"), false);
+        maxMemory = OptionsHelper.parseSize(config.get("uploadMaxMemory"), Runtime.getRuntime().maxMemory() / 4);
+        adaptive = OptionsHelper.parseBoolean(config.get("uploadAdaptive"), false);
+        multipartThreshold = OptionsHelper.parseSize(config.get("uploadMultipartThreshold"),
+                DEFAULT_MULTIPART_THRESHOLD);
+        directoryWorkers = Math.max(1, OptionsHelper.parseInt(config.get("uploadDirectoryWorkers"),
+                DEFAULT_DIRECTORY_WORKERS));
+        checkpoint = OptionsHelper.parseBoolean(config.get("uploadCheckpoint"), false);
+        checkpointDir = OptionsHelper.parseString(config.get("uploadCheckpointDir"), null);
+        copyChunkSize = Math.max(MIN_PART_SIZE, Math.min(MAX_PART_SIZE,
+                OptionsHelper.parseSize(config.get("uploadCopyChunkSize"), DEFAULT_COPY_CHUNK_SIZE)));
+        copyMaxThreads = Math.max(1, OptionsHelper.parseInt(config.get("uploadCopyMaxThreads"),
+                DEFAULT_COPY_MAX_THREADS));
+    }
+
+    /**
+     * the part buffers are held in heap byte arrays, so the part size is kept within
+     * the int range besides the tencent cos limits
+     */
+    private static long clampPartSize(long size) {
+        return Math.max(MIN_PART_SIZE, Math.min(size, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * partSizeFor
+     * part size to upload an object of the given size, the configured chunk size is
+     * increased as needed to stay within the max number of parts
+     *
+     * @param objectSize the expected object size
+     * @return the part size
+     */
+    public long partSizeFor(long objectSize) {
+        final long minSize = (objectSize + MAX_PARTS - 1) / MAX_PARTS;
+        // round up to a whole MiB
+        final long size = (minSize + ONE_MIB - 1) / ONE_MIB * ONE_MIB;
+        return Math.min(Math.max(chunkSize, size), MAX_PART_SIZE);
+    }
+
+    /**
+     * copyPartSizeFor
+     * part size to copy an object of the given size, the configured copy chunk size
+     * is increased as needed to stay within the max number of parts
+     *
+     * @param objectSize the source object size
+     * @return the part size
+     */
+    public long copyPartSizeFor(long objectSize) {
+        final long minSize = (objectSize + MAX_PARTS - 1) / MAX_PARTS;
+        final long size = (minSize + ONE_MIB - 1) / ONE_MIB * ONE_MIB;
+        return Math.min(Math.max(copyChunkSize, size), MAX_PART_SIZE);
+    }
+
+    /**
+     * copyConcurrencyFor
+     * number of parts of an object of the given size copied at the same time, it grows
+     * with the object size so that many small copies share the copy pool with the big ones
+     *
+     * @param objectSize the source object size
+     * @return the number of concurrent part copies
+     */
+    public int copyConcurrencyFor(long objectSize) {
+        final long partSize = copyPartSizeFor(objectSize);
+        final long partsCount = (objectSize + partSize - 1) / partSize;
+        final long bySize = Math.max(2, objectSize / COPY_BYTES_PER_THREAD);
+        return (int) Math.max(1, Math.min(Math.min(bySize, partsCount), copyMaxThreads));
+    }
 
+    /**
+     * streamPartSize
+     * part size of the given part of an upload stream, whose final size is unknown.
+     * in adaptive mode the size is doubled every {@link #ADAPTIVE_PARTS_STEP} parts
+     *
+     * @param partNumber the part number starting from 1
+     * @return the part size
+     */
+    public int streamPartSize(int partNumber) {
+        if (!adaptive) {
+            return bufferSize;
+        }
+        final int step = Math.min((partNumber - 1) / ADAPTIVE_PARTS_STEP, 8);
+        return (int) clampPartSize((long) bufferSize << step);
+    }
+
+    /**
+     * retryDelay
+     * exponential backoff with jitter before the given retry attempt
+     *
+     * @param attempt the number of failed attempts
+     * @return the pause in millis
+     */
+    public long retryDelay(int attempt) {
+        final long delay = Math.min(maxRetrySleep, retrySleep << Math.min(attempt - 1, 20));
+        // spread the retries of parts failed at the same time
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
     }
 
     public int getChunkSize() {
@@ -63,12 +257,58 @@ public class CosMultipartOptions {
         return maxCopySize;
     }
 
+    public boolean isChecksumMd5() {
+        return checksumMd5;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public long getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    public int getDirectoryWorkers() {
+        return directoryWorkers;
+    }
+
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    public String getCheckpointDir() {
+        return checkpointDir;
+    }
+
+    public long getCopyChunkSize() {
+        return copyChunkSize;
+    }
+
+    public int getCopyMaxThreads() {
+        return copyMaxThreads;
+    }
+
     @Override
     public String toString() {
         return "chunkSize=" + chunkSize
+                + "; bufferSize=" + bufferSize
                 + "; maxThreads=" + maxThreads
                 + "; maxAttempts=" + maxAttempts
-                + "; retrySleep=" + retrySleep;
+                + "; retrySleep=" + retrySleep
+                + "; maxRetrySleep=" + maxRetrySleep
+                + "; checksumMd5=" + checksumMd5
+                + "; maxMemory=" + maxMemory
+                + "; adaptive=" + adaptive
+                + "; multipartThreshold=" + multipartThreshold
+                + "; directoryWorkers=" + directoryWorkers
+                + "; checkpoint=" + checkpoint
+                + "; copyChunkSize=" + copyChunkSize
+                + "; copyMaxThreads=" + copyMaxThreads;
     }
 
 }
@@ -8,7 +8,14 @@ import com.qcloud.cos.model.ObjectListing;
 import com.qcloud.cos.model.ObjectMetadata;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 import nextflow.tencentcloud.nio.CosClient;
 import nextflow.tencentcloud.nio.CosPath;
 import org.slf4j.Logger;
@@ -36,6 +43,14 @@ public class CosObjectSummaryLookup {
         }
 
         final CosClient client = cosPath.getFileSystem().getClient();
+        final CosAttributesCache cache = client.getAttributesCache();
+        final CosAttributesCache.Entry cached = cache.get(cosPath.getBucket(), cosPath.getKey());
+        if (cached != null) {
+            if (cached.exists()) {
+                return cached.getSummary();
+            }
+            throw new NoSuchFileException("cos://" + cosPath.getBucket() + "/" + cosPath.getKey());
+        }
 
         /*
          * when `key` is an empty string retrieve the object meta-data of the bucket
@@ -58,56 +73,169 @@ public class CosObjectSummaryLookup {
         }
 
         /*
-         * Lookup for the object summary for the specified object key
-         * by using a `listObjects` request
+         * a regular file is found with a single HEAD request
          */
-        String marker = null;
-        while (true) {
-            ListObjectsRequest request = new ListObjectsRequest();
-            request.setBucketName(cosPath.getBucket());
-            request.setPrefix(cosPath.getKey());
-            request.setMaxKeys(250);
-            if (marker != null) {
-                request.setMarker(marker);
-            }
+        final ObjectMetadata meta = getCosObjectMetadata(cosPath);
+        if (meta != null) {
+            summary = new COSObjectSummary();
+            summary.setBucketName(cosPath.getBucket());
+            summary.setETag(meta.getETag());
+            summary.setKey(cosPath.getKey());
+            summary.setLastModified(meta.getLastModified());
+            summary.setSize(meta.getContentLength());
+            summary.setStorageClass(meta.getStorageClass());
+            cache.put(cosPath.getBucket(), cosPath.getKey(), summary);
+            return summary;
+        }
 
-            ObjectListing listing = client.listObjects(request);
-            List<COSObjectSummary> results = listing.getObjectSummaries();
+        /*
+         * otherwise it is a directory when there is anything under `key/`, the first entry
+         * of a delimited listing is enough whatever the number of keys sharing the prefix
+         */
+        final String prefix = cosPath.getKey() + "/";
+        final ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(cosPath.getBucket());
+        request.setPrefix(prefix);
+        request.setDelimiter("/");
+        request.setMaxKeys(1);
 
-            if (results.isEmpty()) {
-                break;
-            }
+        final ObjectListing listing = client.listObjects(request);
+        final List<COSObjectSummary> results = listing.getObjectSummaries();
+        if (!results.isEmpty()) {
+            cache.put(cosPath.getBucket(), cosPath.getKey(), results.get(0));
+            return results.get(0);
+        }
+        final List<String> prefixes = listing.getCommonPrefixes();
+        if (!prefixes.isEmpty()) {
+            // a sub directory, there is no object to report so a summary of the sub directory is made up
+            summary = new COSObjectSummary();
+            summary.setBucketName(cosPath.getBucket());
+            summary.setKey(prefixes.get(0));
+            cache.put(cosPath.getBucket(), cosPath.getKey(), summary);
+            return summary;
+        }
 
-            for (COSObjectSummary item : results) {
-                if (matchName(cosPath.getKey(), item)) {
-                    return item;
-                }
-            }
+        cache.putMissing(cosPath.getBucket(), cosPath.getKey());
+        throw new NoSuchFileException("cos://" + cosPath.getBucket() + "/" + cosPath.getKey());
+    }
 
-            if (listing.isTruncated()) {
-                marker = listing.getNextMarker();
-            } else {
-                break;
+    /**
+     * lookupAll
+     * lookup the object summaries of many paths, the paths sharing a parent directory are resolved
+     * together with a single delimited listing of the longest prefix common to their names. a path
+     * alone in its directory is not resolved, since a single lookup is cheaper than a listing
+     *
+     * @param paths the paths to resolve
+     * @return the resolved paths, with an empty summary when the path does not exist
+     */
+    public Map<CosPath, Optional<COSObjectSummary>> lookupAll(Collection<CosPath> paths) {
+        // group the paths not known yet by their parent directory
+        final Map<String, TreeMap<String, List<CosPath>>> groups = new LinkedHashMap<>();
+        for (CosPath it : paths) {
+            final String key = it.getKey();
+            if (key.isEmpty() || it.hasObjectSummary()
+                    || it.getFileSystem().getClient().getAttributesCache().get(it.getBucket(), key) != null) {
+                continue;
             }
+            final int p = key.lastIndexOf('/');
+            final String dir = it.getBucket() + "/" + (p < 0 ? "" : key.substring(0, p + 1));
+            groups.computeIfAbsent(dir, k -> new TreeMap<>())
+                    .computeIfAbsent(key.substring(p + 1), k -> new ArrayList<>())
+                    .add(it);
         }
 
-        throw new NoSuchFileException("cos://" + cosPath.getBucket() + "/" + cosPath.getKey());
+        final Map<CosPath, Optional<COSObjectSummary>> result = new HashMap<>();
+        for (TreeMap<String, List<CosPath>> group : groups.values()) {
+            if (group.size() > 1) {
+                lookupGroup(group, result);
+            }
+        }
+        return result;
     }
 
-    private boolean matchName(String fileName, COSObjectSummary summary) {
-        String foundKey = summary.getKey();
+    private void lookupGroup(TreeMap<String, List<CosPath>> group, Map<CosPath, Optional<COSObjectSummary>> result) {
+        final CosPath any = group.values().iterator().next().get(0);
+        final CosClient client = any.getFileSystem().getClient();
+        final CosAttributesCache cache = client.getAttributesCache();
+        final String bucket = any.getBucket();
+        final String key = any.getKey();
+        final String dir = key.substring(0, key.lastIndexOf('/') + 1);
+        // the names are sorted, the first and last ones give the common prefix and the listing end
+        final String first = dir + group.firstKey();
+        final String last = dir + group.lastKey() + "/";
+
+        final ListObjectsRequest request = new ListObjectsRequest();
+        request.setBucketName(bucket);
+        request.setPrefix(dir + commonPrefix(group.firstKey(), group.lastKey() + "/"));
+        request.setDelimiter("/");
+        request.setMaxKeys(1000);
+        // start just before the first name, the keys sharing its prefix but one character sort after
+        if (first.length() > 1) {
+            request.setMarker(first.substring(0, first.length() - 1));
+        }
 
-        // they are different names return false
-        if (!foundKey.startsWith(fileName)) {
-            return false;
+        // a sparse group in a large directory would take many pages, the names not reached
+        // after as many pages as names are left to single lookups
+        final Map<String, COSObjectSummary> found = new HashMap<>();
+        String lastListed = null;
+        boolean complete = false;
+        int pages = 0;
+        ObjectListing listing = client.listObjects(request);
+        while (true) {
+            pages++;
+            for (COSObjectSummary it : listing.getObjectSummaries()) {
+                final String name = it.getKey().substring(dir.length());
+                if (group.containsKey(name)) {
+                    // a file has precedence over a directory with the same name
+                    found.put(name, it);
+                }
+                lastListed = max(lastListed, it.getKey());
+            }
+            for (String it : listing.getCommonPrefixes()) {
+                final String name = it.substring(dir.length(), it.length() - 1);
+                if (group.containsKey(name) && !found.containsKey(name)) {
+                    final COSObjectSummary summary = new COSObjectSummary();
+                    summary.setBucketName(bucket);
+                    summary.setKey(it);
+                    found.put(name, summary);
+                }
+                lastListed = max(lastListed, it);
+            }
+            // stop as soon as the listing went past the last requested name
+            complete = !listing.isTruncated() || lastListed != null && lastListed.compareTo(last) >= 0;
+            if (complete || pages >= group.size()) {
+                break;
+            }
+            listing = client.listNextBatchOfObjects(listing);
         }
 
-        // when they are the same length, they are identical
-        if (foundKey.length() == fileName.length()) {
-            return true;
+        for (Map.Entry<String, List<CosPath>> entry : group.entrySet()) {
+            final String name = dir + entry.getKey();
+            final COSObjectSummary summary = found.get(entry.getKey());
+            if (summary != null) {
+                cache.put(bucket, name, summary);
+            } else if (complete || lastListed != null && (name + "/").compareTo(lastListed) <= 0) {
+                cache.putMissing(bucket, name);
+            } else {
+                // not reached by the listing
+                continue;
+            }
+            for (CosPath it : entry.getValue()) {
+                result.put(it, Optional.ofNullable(summary));
+            }
         }
+    }
 
-        return foundKey.charAt(fileName.length()) == '/';
+    private static String max(String a, String b) {
+        return a == null || b.compareTo(a) > 0 ? b : a;
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return a.substring(0, i);
     }
 
     public ObjectMetadata getCosObjectMetadata(CosPath cosPath) {
@@ -0,0 +1,255 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CosUploadCheckpoint
+ * state of a multipart upload persisted on the local disk: the upload id and, for each
+ * uploaded part, its etag, crc64, offset and length. a later upload of the same source
+ * to the same object only sends the missing parts. the file is written when the upload
+ * starts and each completed part is appended to it, tagged with the upload id so that
+ * the parts appended by another writer of the same object are ignored
+ */
+public class CosUploadCheckpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(CosUploadCheckpoint.class);
+
+    private static final String PART_PREFIX = "part.";
+
+    private final Path file;
+    private final String bucket;
+    private final String key;
+    private final String source;
+    private final long size;
+    private final long lastModified;
+    private final long partSize;
+    private final Map<Integer, Part> parts;
+    private String uploadId;
+
+    private CosUploadCheckpoint(Path file, String bucket, String key, String source, long size,
+            long lastModified, long partSize, String uploadId, Map<Integer, Part> parts) {
+        this.file = file;
+        this.bucket = bucket;
+        this.key = key;
+        this.source = source;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.partSize = partSize;
+        this.uploadId = uploadId;
+        this.parts = parts;
+    }
+
+    /**
+     * load
+     * load the checkpoint of the upload of the given source into the given object, a fresh
+     * checkpoint is returned when there is none or it was recorded for a different source version
+     *
+     * @param dir checkpoint directory
+     * @param bucket target bucket
+     * @param key target key
+     * @param source local source file, or an empty string for a stream
+     * @param size source size, or -1 when unknown
+     * @param lastModified source modification time, or -1 when unknown
+     * @param partSize size of the parts
+     * @return the checkpoint
+     */
+    public static CosUploadCheckpoint load(Path dir, String bucket, String key, String source, long size,
+            long lastModified, long partSize) {
+        final Path file = dir.resolve(hash(bucket + "/" + key + "@" + source) + ".upload");
+        if (Files.exists(file)) {
+            final Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+                if (Objects.equals(bucket, props.getProperty("bucket"))
+                        && Objects.equals(key, props.getProperty("key"))
+                        && Objects.equals(source, props.getProperty("source"))
+                        && size == Long.parseLong(props.getProperty("size"))
+                        && lastModified == Long.parseLong(props.getProperty("lastModified"))
+                        && partSize == Long.parseLong(props.getProperty("partSize"))) {
+                    final String uploadId = props.getProperty("uploadId");
+                    final Map<Integer, Part> parts = new HashMap<>();
+                    for (String name : props.stringPropertyNames()) {
+                        // part.<uploadId>.<partNumber>
+                        final int p = name.lastIndexOf('.');
+                        if (name.startsWith(PART_PREFIX) && p > PART_PREFIX.length()
+                                && name.substring(PART_PREFIX.length(), p).equals(uploadId)) {
+                            parts.put(Integer.parseInt(name.substring(p + 1)), Part.parse(props.getProperty(name)));
+                        }
+                    }
+                    log.debug("Found Cos upload checkpoint {} - uploadId: {}; completed parts: {}",
+                            file, props.getProperty("uploadId"), parts.size());
+                    return new CosUploadCheckpoint(file, bucket, key, source, size, lastModified, partSize,
+                            props.getProperty("uploadId"), parts);
+                }
+                log.debug("Discarding Cos upload checkpoint {} -- the source has changed", file);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Discarding Cos upload checkpoint {} -- Cause: {}", file, e.getMessage());
+            }
+        }
+        return new CosUploadCheckpoint(file, bucket, key, source, size, lastModified, partSize,
+                null, new HashMap<>());
+    }
+
+    public synchronized String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * start tracking a new multipart upload, the parts of any previous upload are dropped
+     */
+    public synchronized void start(String uploadId) throws IOException {
+        this.uploadId = uploadId;
+        parts.clear();
+        save();
+    }
+
+    public synchronized Part getPart(int partNumber) {
+        return parts.get(partNumber);
+    }
+
+    public synchronized int completedCount() {
+        return parts.size();
+    }
+
+    /**
+     * record the part as uploaded and append it to the checkpoint file
+     */
+    public synchronized void complete(int partNumber, Part part) throws IOException {
+        parts.put(partNumber, part);
+        final String line = PART_PREFIX + uploadId + "." + partNumber + "=" + part + "\n";
+        Files.write(file, line.getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * keep only the parts which the server reports with the same etag and length, the
+     * parts dropped stay in the file until the checkpoint is written again, they are
+     * checked against the server in the same way when loaded
+     *
+     * @param uploaded the uploaded parts as listed by tencent cos, by part number
+     */
+    public synchronized void retain(Map<Integer, Part> uploaded) {
+        final Iterator<Map.Entry<Integer, Part>> it = parts.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Integer, Part> entry = it.next();
+            final Part server = uploaded.get(entry.getKey());
+            if (server == null || !Objects.equals(unquote(server.etag), unquote(entry.getValue().etag))
+                    || server.length != entry.getValue().length) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String unquote(String etag) {
+        return etag != null ? etag.replace("\"", "") : null;
+    }
+
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private void save() throws IOException {
+        final Properties props = new Properties();
+        props.setProperty("bucket", bucket);
+        props.setProperty("key", key);
+        props.setProperty("source", source);
+        props.setProperty("size", String.valueOf(size));
+        props.setProperty("lastModified", String.valueOf(lastModified));
+        props.setProperty("partSize", String.valueOf(partSize));
+        props.setProperty("uploadId", uploadId);
+        for (Map.Entry<Integer, Part> entry : parts.entrySet()) {
+            props.setProperty(PART_PREFIX + uploadId + "." + entry.getKey(), entry.getValue().toString());
+        }
+
+        Files.createDirectories(file.getParent());
+        // a temp file of its own, concurrent writers of the same object must not share it
+        final Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                props.store(out, null);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static Path defaultDir() {
+        return Paths.get(System.getProperty("user.home"), ".nextflow", "tencentcloud", "uploads");
+    }
+
+    private static String hash(String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder result = new StringBuilder();
+            for (byte b : digest) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot find a SHA-256 algorithm provider", e);
+        }
+    }
+
+    /**
+     * Part
+     * an uploaded part, the crc64 is null when not known
+     */
+    public static class Part {
+        private final String etag;
+        private final Long crc;
+        private final long offset;
+        private final long length;
+
+        public Part(String etag, Long crc, long offset, long length) {
+            this.etag = etag;
+            this.crc = crc;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public Long getCrc() {
+            return crc;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        static Part parse(String value) {
+            final String[] items = value.split(";", -1);
+            final Long crc = items[1].isEmpty() ? null : Long.parseUnsignedLong(items[1]);
+            return new Part(items[0], crc, Long.parseLong(items[2]), Long.parseLong(items[3]));
+        }
+
+        @Override
+        public String toString() {
+            return etag + ";" + (crc != null ? Long.toUnsignedString(crc) : "") + ";" + offset + ";" + length;
+        }
+    }
+}
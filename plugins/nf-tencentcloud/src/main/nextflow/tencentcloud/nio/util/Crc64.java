@@ -0,0 +1,175 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Crc64
+ * CRC-64/ECMA-182 checksum as returned by tencent cos in the `x-cos-hash-crc64ecma` header.
+ * the data is processed eight bytes at a time, and the checksums of consecutive blocks
+ * can be combined without reading the data again
+ */
+public class Crc64 {
+
+    private static final long POLY = 0xC96C5795D7870F42L;
+
+    private static final long[][] TABLE = new long[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            long crc = n;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            long crc = TABLE[0][n];
+            for (int k = 1; k < 8; k++) {
+                crc = TABLE[0][(int) (crc & 0xff)] ^ (crc >>> 8);
+                TABLE[k][n] = crc;
+            }
+        }
+    }
+
+    private long value;
+
+    public Crc64() {
+    }
+
+    public Crc64(long value) {
+        this.value = value;
+    }
+
+    public void update(byte[] b, int off, int len) {
+        long crc = ~value;
+        while (len >= 8) {
+            crc ^= (b[off] & 0xffL)
+                    | (b[off + 1] & 0xffL) << 8
+                    | (b[off + 2] & 0xffL) << 16
+                    | (b[off + 3] & 0xffL) << 24
+                    | (b[off + 4] & 0xffL) << 32
+                    | (b[off + 5] & 0xffL) << 40
+                    | (b[off + 6] & 0xffL) << 48
+                    | (b[off + 7] & 0xffL) << 56;
+            crc = TABLE[7][(int) (crc & 0xff)]
+                    ^ TABLE[6][(int) ((crc >>> 8) & 0xff)]
+                    ^ TABLE[5][(int) ((crc >>> 16) & 0xff)]
+                    ^ TABLE[4][(int) ((crc >>> 24) & 0xff)]
+                    ^ TABLE[3][(int) ((crc >>> 32) & 0xff)]
+                    ^ TABLE[2][(int) ((crc >>> 40) & 0xff)]
+                    ^ TABLE[1][(int) ((crc >>> 48) & 0xff)]
+                    ^ TABLE[0][(int) (crc >>> 56)];
+            off += 8;
+            len -= 8;
+        }
+        while (len > 0) {
+            crc = TABLE[0][(int) ((crc ^ b[off]) & 0xff)] ^ (crc >>> 8);
+            off++;
+            len--;
+        }
+        value = ~crc;
+    }
+
+    /**
+     * update the checksum with the remaining bytes of the buffer, the buffer position is not changed
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        final ByteBuffer view = buffer.duplicate();
+        final byte[] chunk = new byte[Math.min(view.remaining(), 64 * 1024)];
+        while (view.hasRemaining()) {
+            final int len = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, len);
+            update(chunk, 0, len);
+        }
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * combine the checksums of two consecutive blocks
+     *
+     * @param crc1 checksum of the first block
+     * @param crc2 checksum of the second block
+     * @param len2 length of the second block
+     * @return the checksum of the two blocks concatenated
+     */
+    public static long combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+
+        final long[] even = new long[64];
+        final long[] odd = new long[64];
+
+        // operator for one zero bit
+        odd[0] = POLY;
+        long row = 1;
+        for (int n = 1; n < 64; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // operators for two and four zero bits
+        square(even, odd);
+        square(odd, even);
+
+        // apply len2 zero bytes to crc1
+        do {
+            square(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            len2 >>>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            len2 >>>= 1;
+        } while (len2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] mat, long vec) {
+        long sum = 0;
+        int i = 0;
+        while (vec != 0) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+            vec >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] mat) {
+        for (int n = 0; n < 64; n++) {
+            square[n] = times(mat, mat[n]);
+        }
+    }
+
+    /**
+     * parse the checksum returned by tencent cos as an unsigned decimal string
+     *
+     * @return the checksum or null when not available
+     */
+    public static Long parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return Long.parseUnsignedLong(value.trim());
+    }
+
+    public static String toString(long value) {
+        return Long.toUnsignedString(value);
+    }
+}
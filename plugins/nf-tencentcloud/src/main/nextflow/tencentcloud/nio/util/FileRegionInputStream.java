@@ -0,0 +1,104 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * FileRegionInputStream
+ * stream over a region of a file channel using positional reads, so that many regions
+ * of the same channel can be read concurrently. the crc64 of the bytes read is kept
+ */
+public class FileRegionInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+    private Crc64 crc = new Crc64();
+    // false once part of the region has been skipped
+    private boolean crcValid = true;
+
+    private long markPosition;
+    private long markCrc;
+    private boolean markCrcValid = true;
+
+    /**
+     * @param channel file channel
+     * @param start region start offset
+     * @param length region length
+     */
+    public FileRegionInputStream(FileChannel channel, long start, long length) {
+        this.channel = channel;
+        this.position = start;
+        this.end = start + length;
+        this.markPosition = start;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] one = new byte[1];
+        final int n = read(one, 0, 1);
+        return n == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        final int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+        if (n < 0) {
+            throw new EOFException("Unexpected end of file at position " + position);
+        }
+        position += n;
+        if (crcValid) {
+            crc.update(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        final long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        // the skipped bytes are not part of the checksum anymore
+        crcValid = skipped == 0 && crcValid;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(end - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        markPosition = position;
+        markCrc = crc.getValue();
+        markCrcValid = crcValid;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = markPosition;
+        crc = new Crc64(markCrc);
+        crcValid = markCrcValid;
+    }
+
+    /**
+     * @return the crc64 of the bytes read, or null when part of the region was skipped
+     */
+    public Long getCrc64() {
+        return crcValid ? crc.getValue() : null;
+    }
+}
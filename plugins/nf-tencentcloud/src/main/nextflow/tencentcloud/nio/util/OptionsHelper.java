@@ -0,0 +1,65 @@
+package nextflow.tencentcloud.nio.util;
+
+import nextflow.util.Duration;
+import nextflow.util.MemoryUnit;
+
+/**
+ * OptionsHelper
+ * parse the values of the `tencentcloud` config block, which can be numbers,
+ * strings or nextflow memory/duration units
+ */
+public final class OptionsHelper {
+
+    private OptionsHelper() {
+    }
+
+    public static long parseSize(Object value, long defValue) {
+        if (value == null) {
+            return defValue;
+        }
+        if (value instanceof MemoryUnit) {
+            return ((MemoryUnit) value).toBytes();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return new MemoryUnit(value.toString().trim()).toBytes();
+    }
+
+    public static int parseInt(Object value, int defValue) {
+        if (value == null) {
+            return defValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return Integer.parseInt(value.toString().trim());
+    }
+
+    public static long parseDuration(Object value, long defValue) {
+        if (value == null) {
+            return defValue;
+        }
+        if (value instanceof Duration) {
+            return ((Duration) value).toMillis();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return new Duration(value.toString().trim()).toMillis();
+    }
+
+    public static boolean parseBoolean(Object value, boolean defValue) {
+        if (value == null) {
+            return defValue;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return Boolean.parseBoolean(value.toString().trim());
+    }
+
+    public static String parseString(Object value, String defValue) {
+        return value != null ? value.toString() : defValue;
+    }
+}
@@ -0,0 +1,232 @@
+package nextflow.tencentcloud.nio.util;
+
+import java.io.InterruptedIOException;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * UploadMemoryBudget
+ * process wide limit on the bytes held by the part buffers of the upload streams,
+ * a writer asking for a new buffer blocks until enough in-flight parts have been uploaded
+ */
+public class UploadMemoryBudget {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadMemoryBudget.class);
+
+    private static final long SLOW_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * gives back the bytes of the reservations whose owner is gone without closing them
+     */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final long maxBytes;
+
+    private long usedBytes;
+    private long peakBytes;
+    private long waitCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public UploadMemoryBudget(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Upload memory budget must be greater than zero: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * acquire
+     * reserve the given bytes, blocking while the budget is exhausted. a request larger
+     * than the whole budget is granted once nothing else is reserved
+     *
+     * @param bytes bytes to reserve
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        final long amount = Math.min(bytes, maxBytes);
+        lock.lock();
+        try {
+            if (usedBytes + amount <= maxBytes) {
+                reserve(amount);
+                return;
+            }
+            final long start = System.nanoTime();
+            try {
+                while (usedBytes + amount > maxBytes) {
+                    available.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for upload memory");
+            }
+            reserve(amount);
+            final long waited = System.nanoTime() - start;
+            waitCount++;
+            totalWaitNanos += waited;
+            maxWaitNanos = Math.max(maxWaitNanos, waited);
+            if (waited >= SLOW_WAIT_NANOS) {
+                log.debug("Cos upload writer blocked {} ms waiting for memory -- {}",
+                        TimeUnit.NANOSECONDS.toMillis(waited), this);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * release
+     * give back bytes previously reserved with {@link #acquire(long)}
+     *
+     * @param bytes bytes to release
+     */
+    public void release(long bytes) {
+        final long amount = Math.min(bytes, maxBytes);
+        lock.lock();
+        try {
+            usedBytes = Math.max(0, usedBytes - amount);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * reservation
+     * track the bytes reserved on behalf of the given owner, the ones still held when the owner
+     * becomes unreachable without closing the reservation are released with a warning
+     *
+     * @param owner the object holding the reserved buffers
+     * @param name the owner name, for the log
+     * @return the reservation, to be closed by the owner
+     */
+    public Reservation reservation(Object owner, String name) {
+        return new Reservation(owner, name);
+    }
+
+    private void reserve(long amount) {
+        usedBytes += amount;
+        peakBytes = Math.max(peakBytes, usedBytes);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWaitCount() {
+        lock.lock();
+        try {
+            return waitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTotalWaitMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "maxBytes=" + maxBytes
+                    + "; usedBytes=" + usedBytes
+                    + "; peakBytes=" + peakBytes
+                    + "; waitCount=" + waitCount
+                    + "; totalWaitMillis=" + TimeUnit.NANOSECONDS.toMillis(totalWaitNanos)
+                    + "; maxWaitMillis=" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reservation
+     * the bytes of the budget held by one owner
+     */
+    public final class Reservation {
+
+        private final String name;
+        private final Cleaner.Cleanable cleanable;
+        private long heldBytes;
+        private boolean closed;
+
+        private Reservation(Object owner, String name) {
+            this.name = name;
+            this.cleanable = cleaner.register(owner, this::releaseAll);
+        }
+
+        /**
+         * acquire
+         * reserve the given bytes, see {@link UploadMemoryBudget#acquire(long)}
+         */
+        public void acquire(long bytes) throws InterruptedIOException {
+            UploadMemoryBudget.this.acquire(bytes);
+            synchronized (this) {
+                heldBytes += Math.min(bytes, maxBytes);
+            }
+        }
+
+        /**
+         * release
+         * give back bytes reserved with {@link #acquire(long)}, nothing once the reservation is closed
+         */
+        public void release(long bytes) {
+            final long amount;
+            synchronized (this) {
+                amount = Math.min(Math.min(bytes, maxBytes), heldBytes);
+                heldBytes -= amount;
+            }
+            UploadMemoryBudget.this.release(amount);
+        }
+
+        /**
+         * close
+         * give back all the bytes still held
+         */
+        public void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            cleanable.clean();
+        }
+
+        private void releaseAll() {
+            final long amount;
+            final boolean leaked;
+            synchronized (this) {
+                amount = heldBytes;
+                leaked = !closed;
+                heldBytes = 0;
+            }
+            if (amount == 0) {
+                return;
+            }
+            if (leaked) {
+                log.warn("Releasing {} bytes of upload memory held by {} -- the stream was not closed", amount, name);
+            }
+            UploadMemoryBudget.this.release(amount);
+        }
+    }
+}
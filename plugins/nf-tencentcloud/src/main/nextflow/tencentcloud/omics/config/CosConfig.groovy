@@ -10,6 +10,9 @@ import groovy.transform.CompileStatic
 import groovy.util.logging.Slf4j
 import groovy.yaml.YamlSlurper
 import nextflow.Global
+import nextflow.tencentcloud.nio.util.CosDownloadOptions
+import nextflow.tencentcloud.nio.util.CosMultipartOptions
+import nextflow.tencentcloud.nio.util.OptionsHelper
 import org.ini4j.Ini
 import org.ini4j.Profile.Section
 
@@ -21,6 +24,8 @@ import org.ini4j.Profile.Section
 @CompileStatic
 class CosConfig {
 
+    static final int DEFAULT_DELETE_WORKERS = 16
+
     private String bucket
 
     private String secretId
@@ -35,6 +40,15 @@ class CosConfig {
 
     private Region region
 
+    private CosDownloadOptions downloadOptions
+
+    private CosMultipartOptions uploadOptions
+
+    /**
+     * number of multi object delete requests sent concurrently by the directory deletes
+     */
+    private int deleteWorkers
+
     CosConfig(Map config, String bucket) {
         this.bucket = bucket
 
@@ -47,6 +61,20 @@ class CosConfig {
         }
         this.clientConfig = new ClientConfig(region)
         clientConfig.setHttpProtocol(HttpProtocol.https);
+
+        final opts = transferConfig()
+        this.downloadOptions = new CosDownloadOptions(opts)
+        this.uploadOptions = new CosMultipartOptions(opts)
+        this.deleteWorkers = Math.max(1, OptionsHelper.parseInt(opts.get('deleteWorkers'), DEFAULT_DELETE_WORKERS))
+    }
+
+    /**
+     * the transfer settings are always read from the nextflow config file,
+     * whatever the source of the credentials
+     */
+    private static Map transferConfig() {
+        final config = Global.config?.get('tencentcloud') as Map
+        return config != null ? config : Collections.emptyMap()
     }
 
     private void getConfig() {
@@ -134,4 +162,10 @@ class CosConfig {
     String getBucket() { bucket }
 
     Region getRegion() { region }
+
+    CosDownloadOptions getDownloadOptions() { downloadOptions }
+
+    CosMultipartOptions getUploadOptions() { uploadOptions }
+
+    int getDeleteWorkers() { deleteWorkers }
 }